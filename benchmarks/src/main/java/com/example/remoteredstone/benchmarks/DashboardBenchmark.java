@@ -0,0 +1,81 @@
+package com.example.remoteredstone.benchmarks;
+
+import com.example.remoteredstone.DashboardRenderer;
+import com.example.remoteredstone.LocationManager;
+import com.example.remoteredstone.StaticAssets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code renderCold} builds the whole page from scratch. {@code renderAfterEdit} renames one group
+ * before every render, which is the common case for the cached renderer: a single fragment is
+ * rebuilt and the page is reassembled and compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DashboardBenchmark {
+
+    private static final List<String> WORLDS = Collections.singletonList(SyntheticLocations.WORLD);
+
+    @Param({"1000", "10000", "100000"})
+    public int switchCount;
+
+    @Param({"1", "4"})
+    public int groupDepth;
+
+    private LocationManager locationManager;
+    private StaticAssets assets;
+    private DashboardRenderer warmRenderer;
+    private String editedGroupId;
+    private int edits;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        locationManager = SyntheticLocations.load(switchCount, groupDepth);
+        assets = StaticAssets.dashboard(DashboardRenderer.class.getClassLoader(), null);
+        warmRenderer = new DashboardRenderer(WORLDS, "bench", assets);
+        warmRenderer.render(locationManager.getSnapshot());
+        editedGroupId = SyntheticLocations.groupId(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        locationManager.shutdown();
+    }
+
+    @Benchmark
+    public DashboardRenderer.Page renderCold() {
+        return new DashboardRenderer(WORLDS, "bench", assets).render(locationManager.getSnapshot());
+    }
+
+    @Benchmark
+    public DashboardRenderer.Page renderAfterEdit() {
+        locationManager.updateGroup(editedGroupId, "Group 0 #" + (edits++), "");
+        return warmRenderer.render(locationManager.getSnapshot());
+    }
+
+    @Benchmark
+    public DashboardRenderer.Page renderUnchanged() {
+        return warmRenderer.render(locationManager.getSnapshot());
+    }
+}
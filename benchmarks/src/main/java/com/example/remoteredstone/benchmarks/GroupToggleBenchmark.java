@@ -0,0 +1,73 @@
+package com.example.remoteredstone.benchmarks;
+
+import com.example.remoteredstone.BlockUpdateQueue;
+import com.example.remoteredstone.LocationManager;
+import com.example.remoteredstone.Metrics;
+import com.example.remoteredstone.Switch;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The web-thread half of {@code RemoteRedstone.setGroupState}: the state change in
+ * {@link LocationManager} plus one queued block update per switch. The queue is never drained
+ * here, so no server or scheduler is needed; pending updates are replaced in place on every
+ * toggle, as they would be between two ticks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GroupToggleBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int switchCount;
+
+    @Param({"1", "4"})
+    public int groupDepth;
+
+    private LocationManager locationManager;
+    private BlockUpdateQueue blockUpdateQueue;
+    private String groupId;
+    private boolean isON;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        locationManager = SyntheticLocations.load(switchCount, groupDepth);
+        blockUpdateQueue = new BlockUpdateQueue(Logger.getLogger("RemoteRedstone-Bench"), new Metrics(), 200, 2000L);
+        groupId = SyntheticLocations.groupId(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        locationManager.shutdown();
+    }
+
+    @Benchmark
+    public int toggleGroup() {
+        isON = !isON;
+        int count = 0;
+        for (Switch sw : locationManager.setGroupState(groupId, isON)) {
+            blockUpdateQueue.enqueue(sw.getWorld(), sw.getX(), sw.getY(), sw.getZ(), isON ? Material.REDSTONE_BLOCK : Material.GLASS);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.remoteredstone.benchmarks;
+
+import com.example.remoteredstone.LiveStateCache;
+import com.example.remoteredstone.LiveStateFeed;
+import com.example.remoteredstone.LocationManager;
+import com.example.remoteredstone.Switch;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code get-live-states} request body: the ids of every switch on the dashboard, parsed with
+ * Gson and answered from {@link LiveStateCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LiveStatesBenchmark {
+
+    private static final Type ID_LIST = new TypeToken<List<String>>(){}.getType();
+
+    @Param({"1000", "10000", "100000"})
+    public int switchCount;
+
+    private final Gson gson = new Gson();
+    private LocationManager locationManager;
+    private LiveStateCache liveStateCache;
+    private String body;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        locationManager = SyntheticLocations.load(switchCount, 1);
+        liveStateCache = new LiveStateCache(locationManager, new LiveStateFeed(4096, 1), 500, 20);
+        List<String> ids = new ArrayList<>(switchCount);
+        for (Switch sw : locationManager.getAllLocations().values()) {
+            liveStateCache.record(sw.getId(), sw.isOn());
+            ids.add(sw.getId());
+        }
+        body = gson.toJson(ids);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        locationManager.shutdown();
+    }
+
+    @Benchmark
+    public List<String> parseBody() {
+        return gson.fromJson(body, ID_LIST);
+    }
+
+    @Benchmark
+    public String parseAndAnswer() {
+        List<String> switchIds = gson.fromJson(body, ID_LIST);
+        Map<String, Boolean> liveStates = liveStateCache.getStates(switchIds);
+        return gson.toJson(liveStates);
+    }
+}
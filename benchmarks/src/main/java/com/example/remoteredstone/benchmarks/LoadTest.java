@@ -0,0 +1,575 @@
+package com.example.remoteredstone.benchmarks;
+
+import com.example.remoteredstone.RemoteRedstone;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * End-to-end load test: boots the plugin and its web server against a {@link SimulatedServer} and
+ * drives the HTTP API with a number of simulated dashboards, each doing what an open dashboard
+ * tab does: a page load with its static assets, {@code get-live-states} for every switch once a
+ * second, switch and group toggles, occasional reloads and wand polling. After a warm-up it
+ * measures for a fixed time and reports request latency per action, the simulated server's tick
+ * durations and overruns, and the memory allocated by every thread except the load generator.
+ * The process exits with status 2 when a {@code --max-*} limit is exceeded, so the run can gate a
+ * build.
+ */
+public final class LoadTest {
+
+    private static final Pattern STATIC_URL = Pattern.compile("\"(" + Pattern.quote("/static/") + "[^\"]+)\"");
+    private static final String LOAD_GENERATOR_PREFIX = "LoadTest-";
+
+    private final Options options;
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final List<String> switchIds = new ArrayList<>();
+    private final List<String> groupIds = new ArrayList<>();
+    private String liveStatesBody;
+    private String baseUrl;
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    private LoadTest(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(1);
+            return;
+        }
+        System.exit(new LoadTest(options).run());
+    }
+
+    private int run() throws Exception {
+        File root = Files.createTempDirectory("remoteredstone-loadtest").toFile();
+        File dataFolder = new File(root, "RemoteRedstone");
+        if (!dataFolder.mkdirs()) throw new IOException("Could not create " + dataFolder);
+        int port = freePort();
+        writeConfig(dataFolder, port);
+        SyntheticLocations.write(dataFolder, options.switches, options.groupDepth);
+        for (int i = 0; i < options.switches; i++) switchIds.add("switch_" + i);
+        int groupCount = Math.max(1, (options.switches + SyntheticLocations.SWITCHES_PER_GROUP - 1) / SyntheticLocations.SWITCHES_PER_GROUP);
+        for (int i = 0; i < groupCount; i++) groupIds.add(SyntheticLocations.groupId(i));
+        liveStatesBody = new Gson().toJson(switchIds);
+        baseUrl = "http://127.0.0.1:" + port;
+
+        SimulatedServer server = new SimulatedServer(Collections.singletonList(SyntheticLocations.WORLD), options.players, options.serverLoadMillis);
+        Bukkit.setServer(server.getServer());
+        PluginDescriptionFile description = new PluginDescriptionFile("RemoteRedstone", "load-test", RemoteRedstone.class.getName());
+        File pluginFile = new File(RemoteRedstone.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        @SuppressWarnings("deprecation")
+        RemoteRedstone plugin = new RemoteRedstone(server.getServer(), description, dataFolder, pluginFile) {
+        };
+        System.out.println("Starting plugin with " + options.switches + " switches on port " + port + "...");
+        server.start(plugin::onEnable);
+        awaitReady();
+
+        AllocationSampler allocations = new AllocationSampler();
+        List<Thread> dashboards = new ArrayList<>();
+        for (int i = 0; i < options.dashboards; i++) {
+            Thread thread = new Thread(new Dashboard(i, new Random(options.seed + i)), LOAD_GENERATOR_PREFIX + "Dashboard-" + i);
+            thread.setDaemon(true);
+            dashboards.add(thread);
+            thread.start();
+        }
+        allocations.start();
+        System.out.println("Warming up for " + options.warmupSeconds + " s with " + options.dashboards + " dashboards...");
+        TimeUnit.SECONDS.sleep(options.warmupSeconds);
+
+        System.out.println("Measuring for " + options.durationSeconds + " s...");
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        allocations.reset();
+        server.startRecording();
+        measuring = true;
+        TimeUnit.SECONDS.sleep(options.durationSeconds);
+        measuring = false;
+        SimulatedServer.TickStats ticks = server.stopRecording();
+        long allocatedBytes = allocations.allocatedSinceReset();
+        long gcCount = gcCount() - gcCountBefore;
+        long gcTime = gcTime() - gcTimeBefore;
+
+        running = false;
+        allocations.interrupt();
+        for (Thread thread : dashboards) thread.join(TimeUnit.SECONDS.toMillis(10));
+        server.call(() -> {
+            plugin.onDisable();
+            return null;
+        });
+        server.stop();
+        deleteRecursively(root);
+
+        Map<String, Object> report = report(ticks, allocatedBytes, gcCount, gcTime);
+        printReport(report);
+        if (options.jsonFile != null) {
+            Files.write(options.jsonFile.toPath(), new GsonBuilder().setPrettyPrinting().create().toJson(report).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote " + options.jsonFile);
+        }
+        return checkLimits(ticks);
+    }
+
+    private void writeConfig(File dataFolder, int port) throws IOException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("web-port", port);
+        config.set("debug-console-logging", false);
+        if (!options.rateLimit) config.set("rate-limit-per-second", 0);
+        if (options.blockPhysics != null) config.set("block-physics", options.blockPhysics);
+        config.save(new File(dataFolder, "config.yml"));
+    }
+
+    /**
+     * Waits until the dashboard is served, i.e. the switch data has loaded, so that start-up is
+     * not measured.
+     */
+    private void awaitReady() throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/").openConnection();
+                if (connection.getResponseCode() == 200) {
+                    drain(connection);
+                    return;
+                }
+                drain(connection);
+            } catch (IOException e) {
+                // Not listening yet.
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        throw new IllegalStateException("The web server did not become ready.");
+    }
+
+    private int checkLimits(SimulatedServer.TickStats ticks) {
+        boolean failed = false;
+        if (options.maxP99Millis != null) {
+            for (Map.Entry<String, Recorder> entry : new TreeMap<>(recorders).entrySet()) {
+                double p99 = entry.getValue().percentileMillis(0.99);
+                if (p99 > options.maxP99Millis) {
+                    System.out.printf("FAIL: %s p99 %.1f ms exceeds %.1f ms%n", entry.getKey(), p99, options.maxP99Millis);
+                    failed = true;
+                }
+            }
+        }
+        if (options.maxOverrunPercent != null && ticks.overrunPercent() > options.maxOverrunPercent) {
+            System.out.printf("FAIL: %.2f%% of ticks overran 50 ms, limit %.2f%%%n", ticks.overrunPercent(), options.maxOverrunPercent);
+            failed = true;
+        }
+        return failed ? 2 : 0;
+    }
+
+    private Map<String, Object> report(SimulatedServer.TickStats ticks, long allocatedBytes, long gcCount, long gcTimeMillis) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("switches", options.switches);
+        report.put("dashboards", options.dashboards);
+        report.put("durationSeconds", options.durationSeconds);
+        report.put("serverLoadMillis", options.serverLoadMillis);
+        Map<String, Object> requests = new LinkedHashMap<>();
+        for (Map.Entry<String, Recorder> entry : new TreeMap<>(recorders).entrySet()) {
+            Recorder recorder = entry.getValue();
+            Map<String, Object> action = new LinkedHashMap<>();
+            action.put("count", recorder.count());
+            action.put("perSecond", recorder.count() / (double) options.durationSeconds);
+            action.put("p50Millis", recorder.percentileMillis(0.50));
+            action.put("p90Millis", recorder.percentileMillis(0.90));
+            action.put("p99Millis", recorder.percentileMillis(0.99));
+            action.put("maxMillis", recorder.percentileMillis(1.0));
+            action.put("errors", recorder.errors());
+            requests.put(entry.getKey(), action);
+        }
+        report.put("requests", requests);
+        Map<String, Object> tick = new LinkedHashMap<>();
+        tick.put("count", ticks.count());
+        tick.put("tps", ticks.tps());
+        tick.put("p50Millis", ticks.percentileMillis(0.50));
+        tick.put("p99Millis", ticks.percentileMillis(0.99));
+        tick.put("maxMillis", ticks.maxMillis());
+        tick.put("overruns", ticks.overruns());
+        tick.put("overrunPercent", ticks.overrunPercent());
+        report.put("ticks", tick);
+        Map<String, Object> heap = new LinkedHashMap<>();
+        heap.put("allocatedBytes", allocatedBytes);
+        heap.put("allocatedBytesPerSecond", allocatedBytes / (double) options.durationSeconds);
+        heap.put("gcCount", gcCount);
+        heap.put("gcTimeMillis", gcTimeMillis);
+        report.put("heap", heap);
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printReport(Map<String, Object> report) {
+        System.out.println();
+        System.out.printf("%-18s %8s %8s %9s %9s %9s %9s  %s%n", "action", "count", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "errors");
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) report.get("requests")).entrySet()) {
+            Map<String, Object> a = (Map<String, Object>) entry.getValue();
+            System.out.printf("%-18s %8d %8.1f %9.2f %9.2f %9.2f %9.2f  %s%n", entry.getKey(), a.get("count"), a.get("perSecond"),
+                    a.get("p50Millis"), a.get("p90Millis"), a.get("p99Millis"), a.get("maxMillis"), a.get("errors"));
+        }
+        Map<String, Object> t = (Map<String, Object>) report.get("ticks");
+        System.out.printf("%nticks: %d at %.2f TPS, p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d overruns (%.2f%%)%n",
+                t.get("count"), t.get("tps"), t.get("p50Millis"), t.get("p99Millis"), t.get("maxMillis"), t.get("overruns"), t.get("overrunPercent"));
+        Map<String, Object> h = (Map<String, Object>) report.get("heap");
+        System.out.printf("heap: %.1f MB allocated outside the load generator (%.1f MB/s), %d GCs taking %d ms%n",
+                (Long) h.get("allocatedBytes") / 1048576.0, (Double) h.get("allocatedBytesPerSecond") / 1048576.0, h.get("gcCount"), h.get("gcTimeMillis"));
+    }
+
+    static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0.0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private Recorder recorder(String action) {
+        return recorders.computeIfAbsent(action, a -> new Recorder());
+    }
+
+    /**
+     * One open dashboard tab. Every kind of request has its own interval and a random phase, so
+     * the dashboards do not fire in lockstep.
+     */
+    private final class Dashboard implements Runnable {
+        private final int index;
+        private final Random random;
+        private String etag;
+
+        Dashboard(int index, Random random) {
+            this.index = index;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            long nextLive = now + random.nextInt(1000);
+            long nextToggle = now + random.nextInt((int) options.toggleIntervalMillis);
+            long nextGroupToggle = now + random.nextInt((int) options.groupToggleIntervalMillis);
+            long nextReload = now + options.reloadIntervalMillis;
+            long nextWandPoll = now + random.nextInt((int) options.wandPollIntervalMillis);
+            loadPage(true);
+            while (running) {
+                now = System.currentTimeMillis();
+                if (now >= nextLive) {
+                    request("get-live-states", "POST", "/api/get-live-states", "application/json", liveStatesBody);
+                    nextLive += 1000L;
+                } else if (now >= nextToggle) {
+                    request("toggle-switch", "POST", "/api/toggle-switch", "application/x-www-form-urlencoded",
+                            "switchId=" + encode(switchIds.get(random.nextInt(switchIds.size()))) + "&state=" + (random.nextBoolean() ? "set" : "clear"));
+                    nextToggle += options.toggleIntervalMillis;
+                } else if (now >= nextGroupToggle) {
+                    request("toggle-group", "POST", "/api/toggle-group", "application/x-www-form-urlencoded",
+                            "groupId=" + encode(groupIds.get(random.nextInt(groupIds.size()))) + "&state=" + (random.nextBoolean() ? "set" : "clear"));
+                    nextGroupToggle += options.groupToggleIntervalMillis;
+                } else if (now >= nextReload) {
+                    loadPage(false);
+                    nextReload += options.reloadIntervalMillis;
+                } else if (now >= nextWandPoll) {
+                    request("poll-selection", "GET", "/api/poll-selection?player=Player" + (options.players > 0 ? index % options.players : 0) + "&wait=0", null, null);
+                    nextWandPoll += options.wandPollIntervalMillis;
+                } else {
+                    long next = Math.min(Math.min(nextLive, nextToggle), Math.min(Math.min(nextGroupToggle, nextReload), nextWandPoll));
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(Math.max(1L, next - now));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * A first load fetches the page and its static assets; a reload revalidates the page
+         * with its ETag and, like a browser, takes the immutable assets from its cache.
+         */
+        private void loadPage(boolean first) {
+            Response page = request("page", "GET", "/", null, null);
+            if (page == null || !first) return;
+            Matcher matcher = STATIC_URL.matcher(new String(page.body, StandardCharsets.UTF_8));
+            Set<String> assets = new LinkedHashSet<>();
+            while (matcher.find()) assets.add(matcher.group(1));
+            for (String asset : assets) request("static", "GET", asset, null, null);
+        }
+
+        private Response request(String action, String method, String path, String contentType, String body) {
+            long start = System.nanoTime();
+            int status = -1;
+            Response response = null;
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+                connection.setConnectTimeout(10000);
+                connection.setReadTimeout(60000);
+                connection.setRequestMethod(method);
+                connection.setRequestProperty("Accept-Encoding", "gzip");
+                if ("page".equals(action) && etag != null) connection.setRequestProperty("If-None-Match", etag);
+                if (body != null) {
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", contentType);
+                    try (OutputStream out = connection.getOutputStream()) {
+                        out.write(body.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                status = connection.getResponseCode();
+                byte[] data = drain(connection);
+                if ("page".equals(action) && status == 200) etag = connection.getHeaderField("ETag");
+                response = new Response(status, data);
+            } catch (IOException e) {
+                status = -1;
+            }
+            if (measuring) recorder(action).record(System.nanoTime() - start, status);
+            return response;
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final byte[] body;
+
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Reads the whole body so the connection can be reused, un-gzipping it if needed.
+     */
+    private static byte[] drain(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) return new byte[0];
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) in = new GZIPInputStream(in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Latencies of one action during the measurement, and its failures by kind.
+     */
+    private static final class Recorder {
+        private long[] nanos = new long[1024];
+        private int count;
+        private final Map<String, Integer> errors = new TreeMap<>();
+
+        synchronized void record(long elapsed, int status) {
+            if (count == nanos.length) nanos = Arrays.copyOf(nanos, count * 2);
+            nanos[count++] = elapsed;
+            if (status < 200 || status >= 400) {
+                String kind = status == 429 ? "429" : status == 503 ? "503" : status < 0 ? "io" : "other";
+                errors.merge(kind, 1, Integer::sum);
+            }
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized Map<String, Integer> errors() {
+            return new TreeMap<>(errors);
+        }
+
+        synchronized double percentileMillis(double p) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return percentile(sorted, p) / 1e6;
+        }
+    }
+
+    /**
+     * Adds up the bytes allocated by every thread that is not part of the load generator: the web
+     * server's request threads, the server thread and the plugin's background executors. Threads
+     * are sampled twice a second, so a thread that ends between samples loses its last half
+     * second.
+     */
+    private static final class AllocationSampler extends Thread {
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final Map<Long, Long> baseline = new HashMap<>();
+        private final Map<Long, Long> latest = new HashMap<>();
+
+        AllocationSampler() {
+            super(LOAD_GENERATOR_PREFIX + "Allocations");
+            setDaemon(true);
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                sample();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(500);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        synchronized void reset() {
+            sample();
+            baseline.clear();
+            baseline.putAll(latest);
+            latest.clear();
+        }
+
+        synchronized long allocatedSinceReset() {
+            sample();
+            long total = 0L;
+            for (Map.Entry<Long, Long> entry : latest.entrySet()) {
+                Long start = baseline.get(entry.getKey());
+                total += entry.getValue() - (start != null ? start : 0L);
+            }
+            return total;
+        }
+
+        private synchronized void sample() {
+            long[] ids = threads.getAllThreadIds();
+            ThreadInfo[] infos = threads.getThreadInfo(ids, 0);
+            long[] allocated = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (infos[i] == null || allocated[i] < 0 || infos[i].getThreadName().startsWith(LOAD_GENERATOR_PREFIX)) continue;
+                latest.put(ids[i], allocated[i]);
+            }
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0L, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0L;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) time += Math.max(0L, gc.getCollectionTime());
+        return time;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        if (!file.delete()) file.deleteOnExit();
+    }
+
+    private static final class Options {
+        static final String USAGE = "Usage: LoadTest [--dashboards N] [--duration SECONDS] [--warmup SECONDS] [--switches N] [--group-depth N]\n"
+                + "                [--players N] [--server-load-ms MS] [--toggle-interval-ms MS] [--group-toggle-interval-ms MS]\n"
+                + "                [--reload-interval-ms MS] [--wand-poll-interval-ms MS] [--rate-limit] [--block-physics MODE]\n"
+                + "                [--seed N] [--json FILE] [--max-p99-ms MS] [--max-overrun-pct PERCENT]";
+
+        int dashboards = 20;
+        int durationSeconds = 60;
+        int warmupSeconds = 10;
+        int switches = 10000;
+        int groupDepth = 3;
+        int players = 5;
+        long serverLoadMillis;
+        long toggleIntervalMillis = 2000L;
+        long groupToggleIntervalMillis = 10000L;
+        long reloadIntervalMillis = 30000L;
+        long wandPollIntervalMillis = 5000L;
+        boolean rateLimit;
+        String blockPhysics;
+        long seed = 1L;
+        File jsonFile;
+        Double maxP99Millis;
+        Double maxOverrunPercent;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--rate-limit".equals(arg)) {
+                    options.rateLimit = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+                String value = args[++i];
+                try {
+                    switch (arg) {
+                        case "--dashboards": options.dashboards = positive(arg, Integer.parseInt(value)); break;
+                        case "--duration": options.durationSeconds = positive(arg, Integer.parseInt(value)); break;
+                        case "--warmup": options.warmupSeconds = Math.max(0, Integer.parseInt(value)); break;
+                        case "--switches": options.switches = positive(arg, Integer.parseInt(value)); break;
+                        case "--group-depth": options.groupDepth = positive(arg, Integer.parseInt(value)); break;
+                        case "--players": options.players = Math.max(0, Integer.parseInt(value)); break;
+                        case "--server-load-ms": options.serverLoadMillis = Math.max(0L, Long.parseLong(value)); break;
+                        case "--toggle-interval-ms": options.toggleIntervalMillis = positive(arg, Integer.parseInt(value)); break;
+                        case "--group-toggle-interval-ms": options.groupToggleIntervalMillis = positive(arg, Integer.parseInt(value)); break;
+                        case "--reload-interval-ms": options.reloadIntervalMillis = positive(arg, Integer.parseInt(value)); break;
+                        case "--wand-poll-interval-ms": options.wandPollIntervalMillis = positive(arg, Integer.parseInt(value)); break;
+                        case "--block-physics": options.blockPhysics = value; break;
+                        case "--seed": options.seed = Long.parseLong(value); break;
+                        case "--json": options.jsonFile = new File(value); break;
+                        case "--max-p99-ms": options.maxP99Millis = Double.parseDouble(value); break;
+                        case "--max-overrun-pct": options.maxOverrunPercent = Double.parseDouble(value); break;
+                        default: throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + arg + ": " + value);
+                }
+            }
+            return options;
+        }
+
+        private static int positive(String option, int value) {
+            if (value <= 0) throw new IllegalArgumentException(option + " must be positive");
+            return value;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.remoteredstone.benchmarks;
+
+import com.example.remoteredstone.Group;
+import com.example.remoteredstone.LocationManager;
+import com.example.remoteredstone.Switch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LocationManagerBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int switchCount;
+
+    @Param({"1", "4"})
+    public int groupDepth;
+
+    @Param({"yaml", "journal"})
+    public String store;
+
+    private LocationManager locationManager;
+    private String toggledSwitchId;
+    private boolean isON;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        locationManager = SyntheticLocations.load(switchCount, groupDepth, store);
+        toggledSwitchId = locationManager.getAllLocations().keySet().iterator().next();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        locationManager.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Switch> getAllLocations() {
+        return locationManager.getAllLocations();
+    }
+
+    @Benchmark
+    public Map<String, Group> getAllGroups() {
+        return locationManager.getAllGroups();
+    }
+
+    @Benchmark
+    public void iterateAllLocations(Blackhole blackhole) {
+        for (Switch sw : locationManager.getAllLocations().values()) {
+            blackhole.consume(sw.isOn());
+        }
+    }
+
+    @Benchmark
+    public void saveConfig() {
+        locationManager.saveConfig();
+    }
+
+    /**
+     * One toggle without writing the store (the write-behind delay is an hour), so the score
+     * should not depend on switchCount.
+     */
+    @Benchmark
+    public void toggle() {
+        isON = !isON;
+        locationManager.updateLocationState(toggledSwitchId, isON);
+    }
+
+    @Benchmark
+    public void toggleAndSave() {
+        isON = !isON;
+        locationManager.updateLocationState(toggledSwitchId, isON);
+        locationManager.saveConfig();
+    }
+}
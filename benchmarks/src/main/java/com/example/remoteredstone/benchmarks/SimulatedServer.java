@@ -0,0 +1,359 @@
+package com.example.remoteredstone.benchmarks;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * In-process stand-in for the parts of the Bukkit server the plugin touches: worlds whose blocks
+ * are kept in a map (every chunk counts as loaded), online players standing still, and a
+ * scheduler driven by a tick loop on its own "Server thread" at 20 ticks per second. Every tick's
+ * duration is recorded, so the load test can tell how much of the 50 ms budget the plugin's tasks
+ * used while the web server was busy. The Bukkit interfaces are implemented with
+ * {@link Proxy}; methods the plugin does not call throw {@link UnsupportedOperationException}.
+ */
+public final class SimulatedServer {
+
+    public static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Logger logger = Logger.getLogger("SimulatedServer");
+    private final Map<String, World> worlds = new LinkedHashMap<>();
+    private final List<Player> players = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Task> newTasks = new ConcurrentLinkedQueue<>();
+    private final List<Task> tasks = new ArrayList<>();
+    private final AtomicInteger taskIds = new AtomicInteger();
+    private final long serverLoadNanos;
+    private final Server server;
+    private final Thread thread;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private volatile long currentTick;
+    private volatile boolean recording;
+    private long[] tickNanos = new long[1024];
+    private int recordedTicks;
+    private long recordingStartNanos;
+    private long recordingEndNanos;
+
+    /**
+     * @param serverLoadMillis time each tick spends busy-waiting besides the scheduled tasks, to
+     *                         stand in for the rest of a real server's tick
+     */
+    public SimulatedServer(List<String> worldNames, int playerCount, long serverLoadMillis) {
+        this.serverLoadNanos = TimeUnit.MILLISECONDS.toNanos(serverLoadMillis);
+        this.thread = new Thread(this::loop, "Server thread");
+        this.server = proxy(Server.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getLogger": return logger;
+                case "getName": return "SimulatedServer";
+                case "getVersion": return "simulated";
+                case "getBukkitVersion": return "1.7.10-R0.1-SNAPSHOT";
+                case "getWorlds": return new ArrayList<>(worlds.values());
+                case "getWorld": return worlds.get((String) args[0]);
+                case "getOnlinePlayers": return players.toArray(new Player[0]);
+                case "getPlayer":
+                case "getPlayerExact": return findPlayer((String) args[0]);
+                case "getScheduler": return scheduler;
+                case "getPluginManager": return pluginManager;
+                case "isPrimaryThread": return Thread.currentThread() == thread;
+                default: return unsupported(p, method.getName(), args);
+            }
+        });
+        for (String name : worldNames) worlds.put(name, world(name));
+        World first = worlds.values().iterator().next();
+        for (int i = 0; i < playerCount; i++) players.add(player("Player" + i, first, i * 16, 64, i * 16));
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * Starts the tick loop and runs {@code startup} as its first task, the way plugins are enabled
+     * on the main thread before the first tick.
+     */
+    public void start(Runnable startup) throws Exception {
+        CompletableFuture<Void> enabled = new CompletableFuture<>();
+        newTasks.add(new Task(taskIds.incrementAndGet(), () -> {
+            try {
+                startup.run();
+                enabled.complete(null);
+            } catch (Throwable t) {
+                enabled.completeExceptionally(t);
+            }
+        }, 0L, -1L));
+        thread.start();
+        enabled.get();
+    }
+
+    /**
+     * Runs {@code action} on the server thread between two ticks and waits for it.
+     */
+    public <T> T call(Callable<T> action) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        newTasks.add(new Task(taskIds.incrementAndGet(), () -> {
+            try {
+                result.complete(action.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, currentTick, -1L));
+        return result.get();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        stopped.await();
+    }
+
+    /**
+     * Clears the tick history; the statistics describe the ticks from here on.
+     */
+    public synchronized void startRecording() {
+        recordedTicks = 0;
+        recordingStartNanos = System.nanoTime();
+        recordingEndNanos = 0L;
+        recording = true;
+    }
+
+    public synchronized TickStats stopRecording() {
+        recording = false;
+        recordingEndNanos = System.nanoTime();
+        return new TickStats(Arrays.copyOf(tickNanos, recordedTicks), recordingEndNanos - recordingStartNanos);
+    }
+
+    private void loop() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            Task task;
+            while ((task = newTasks.poll()) != null) tasks.add(task);
+            long tick = currentTick;
+            for (int i = 0; i < tasks.size(); i++) {
+                Task t = tasks.get(i);
+                if (t.cancelled || t.nextTick > tick) continue;
+                try {
+                    t.runnable.run();
+                } catch (Throwable e) {
+                    logger.warning("Task " + t.id + " threw " + e);
+                }
+                if (t.period > 0) t.nextTick = tick + t.period;
+                else t.cancelled = true;
+            }
+            tasks.removeIf(t -> t.cancelled);
+            while (System.nanoTime() - start < serverLoadNanos) {
+                // Busy, like the rest of a real server tick.
+            }
+            long duration = System.nanoTime() - start;
+            if (recording) record(duration);
+            currentTick = tick + 1;
+            nextTick += TICK_NANOS;
+            long sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            } else {
+                // Behind schedule: start the next tick now rather than running ticks back to back to catch up.
+                nextTick = System.nanoTime();
+            }
+        }
+        stopped.countDown();
+    }
+
+    private synchronized void record(long duration) {
+        if (!recording) return;
+        if (recordedTicks == tickNanos.length) tickNanos = Arrays.copyOf(tickNanos, recordedTicks * 2);
+        tickNanos[recordedTicks++] = duration;
+    }
+
+    private Player findPlayer(String name) {
+        for (Player player : players) {
+            if (player.getName().equalsIgnoreCase(name)) return player;
+        }
+        return null;
+    }
+
+    private final BukkitScheduler scheduler = proxy(BukkitScheduler.class, (p, method, args) -> {
+        switch (method.getName()) {
+            case "runTask": return schedule((Runnable) args[1], 0L, -1L);
+            case "runTaskLater": return schedule((Runnable) args[1], (Long) args[2], -1L);
+            case "runTaskTimer": return schedule((Runnable) args[1], (Long) args[2], Math.max(1L, (Long) args[3]));
+            case "callSyncMethod": {
+                Callable<?> callable = (Callable<?>) args[1];
+                CompletableFuture<Object> future = new CompletableFuture<>();
+                schedule(() -> {
+                    try {
+                        future.complete(callable.call());
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }, 0L, -1L);
+                return future;
+            }
+            default: return unsupported(p, method.getName(), args);
+        }
+    });
+
+    private final PluginManager pluginManager = proxy(PluginManager.class, (p, method, args) -> {
+        // Events never fire in the simulation, so listeners need not be kept.
+        if ("registerEvents".equals(method.getName())) return null;
+        return unsupported(p, method.getName(), args);
+    });
+
+    private BukkitTask schedule(Runnable runnable, long delay, long period) {
+        Task task = new Task(taskIds.incrementAndGet(), runnable, currentTick + Math.max(0L, delay), period);
+        newTasks.add(task);
+        return proxy(BukkitTask.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getTaskId": return task.id;
+                case "cancel": task.cancelled = true; return null;
+                default: return unsupported(p, method.getName(), args);
+            }
+        });
+    }
+
+    private World world(String name) {
+        Map<Long, Material> worldBlocks = new ConcurrentHashMap<>();
+        World[] self = new World[1];
+        org.bukkit.Chunk loadedChunk = proxy(org.bukkit.Chunk.class, (p, method, args) -> {
+            if ("load".equals(method.getName()) || "isLoaded".equals(method.getName())) return true;
+            return unsupported(p, method.getName(), args);
+        });
+        self[0] = proxy(World.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getName": return name;
+                case "isChunkLoaded": return true;
+                case "getChunkAt": return loadedChunk;
+                case "getBlockAt": return block(self[0], worldBlocks, (Integer) args[0], (Integer) args[1], (Integer) args[2]);
+                case "getTime": return (currentTick + 6000L) % 24000L;
+                case "getFullTime": return currentTick;
+                default: return unsupported(p, method.getName(), args);
+            }
+        });
+        return self[0];
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Block block(World world, Map<Long, Material> worldBlocks, int x, int y, int z) {
+        Long key = ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+        return proxy(Block.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getType": return worldBlocks.getOrDefault(key, Material.AIR);
+                case "getTypeId": return worldBlocks.getOrDefault(key, Material.AIR).getId();
+                case "setType": worldBlocks.put(key, (Material) args[0]); return null;
+                case "setTypeId": worldBlocks.put(key, Material.getMaterial((Integer) args[0])); return true;
+                case "getX": return x;
+                case "getY": return y;
+                case "getZ": return z;
+                case "getWorld": return world;
+                default: return unsupported(p, method.getName(), args);
+            }
+        });
+    }
+
+    private static Player player(String name, World world, int x, int y, int z) {
+        return proxy(Player.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getName": return name;
+                case "getLocation": return new Location(world, x, y, z);
+                case "isOnline": return true;
+                case "sendMessage": return null;
+                default: return unsupported(p, method.getName(), args);
+            }
+        });
+    }
+
+    private static Object unsupported(Object proxy, String method, Object[] args) {
+        switch (method) {
+            case "hashCode": return System.identityHashCode(proxy);
+            case "equals": return proxy == args[0];
+            case "toString": return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default: throw new UnsupportedOperationException(method + " is not simulated");
+        }
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SimulatedServer.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static final class Task {
+        final int id;
+        final Runnable runnable;
+        final long period;
+        volatile long nextTick;
+        volatile boolean cancelled;
+
+        Task(int id, Runnable runnable, long firstTick, long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextTick = firstTick;
+            this.period = period;
+        }
+    }
+
+    /**
+     * Durations of the recorded ticks and the wall time they covered.
+     */
+    public static final class TickStats {
+        public final long[] tickNanos;
+        public final long elapsedNanos;
+
+        TickStats(long[] tickNanos, long elapsedNanos) {
+            this.tickNanos = tickNanos;
+            this.elapsedNanos = elapsedNanos;
+            Arrays.sort(this.tickNanos);
+        }
+
+        public int count() {
+            return tickNanos.length;
+        }
+
+        public double tps() {
+            return elapsedNanos > 0 ? tickNanos.length * 1e9 / elapsedNanos : 0.0;
+        }
+
+        public int overruns() {
+            int overruns = 0;
+            for (long nanos : tickNanos) {
+                if (nanos > TICK_NANOS) overruns++;
+            }
+            return overruns;
+        }
+
+        public double overrunPercent() {
+            return tickNanos.length > 0 ? 100.0 * overruns() / tickNanos.length : 0.0;
+        }
+
+        public double percentileMillis(double p) {
+            return LoadTest.percentile(tickNanos, p) / 1e6;
+        }
+
+        public double maxMillis() {
+            return tickNanos.length > 0 ? tickNanos[tickNanos.length - 1] / 1e6 : 0.0;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.remoteredstone.benchmarks;
+
+import com.example.remoteredstone.JournalLocationStore;
+import com.example.remoteredstone.LocationManager;
+import com.example.remoteredstone.LocationStore;
+import com.example.remoteredstone.Metrics;
+import com.example.remoteredstone.YamlLocationStore;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+/**
+ * Generates a locations.yml with a fixed shape so that runs are comparable: one group per
+ * {@link #SWITCHES_PER_GROUP} switches, groups nested in chains of {@code groupDepth} levels and
+ * switches spread round-robin over all groups.
+ */
+public final class SyntheticLocations {
+
+    public static final int SWITCHES_PER_GROUP = 50;
+    public static final String WORLD = "world";
+
+    private SyntheticLocations() {
+    }
+
+    public static File write(File dir, int switchCount, int groupDepth) throws IOException {
+        int groupCount = Math.max(1, (switchCount + SWITCHES_PER_GROUP - 1) / SWITCHES_PER_GROUP);
+        int depth = Math.max(1, groupDepth);
+        YamlConfiguration yaml = new YamlConfiguration();
+        for (int i = 0; i < groupCount; i++) {
+            String path = "groups." + groupId(i);
+            yaml.set(path + ".name", "Group " + i);
+            yaml.set(path + ".memo", i % 3 == 0 ? "memo " + i : "");
+            yaml.set(path + ".order", (long) i);
+            if (i % depth != 0) {
+                yaml.set(path + ".parent", groupId(i - 1));
+            }
+        }
+        for (int i = 0; i < switchCount; i++) {
+            String path = "locations.switch_" + i;
+            yaml.set(path + ".name", "Switch " + i);
+            yaml.set(path + ".world", WORLD);
+            yaml.set(path + ".x", (i % 1000) * 2);
+            yaml.set(path + ".y", 64 + (i / 1000) % 100);
+            yaml.set(path + ".z", (i / 100000) * 2);
+            yaml.set(path + ".state", i % 2 == 0 ? "ON" : "OFF");
+            yaml.set(path + ".group", groupId(i % groupCount));
+        }
+        File file = new File(dir, "locations.yml");
+        yaml.save(file);
+        return file;
+    }
+
+    /**
+     * Loads a generated data set into the given store type ({@code yaml} or {@code journal}; the
+     * journal is created by migrating the generated YAML). Write-behind is configured with a long
+     * delay so that background saves do not run in the middle of a measurement.
+     */
+    public static LocationManager load(int switchCount, int groupDepth, String storeType) throws IOException {
+        File dir = Files.createTempDirectory("remoteredstone-bench").toFile();
+        File file = write(dir, switchCount, groupDepth);
+        Logger logger = Logger.getLogger("RemoteRedstone-Bench");
+        YamlLocationStore yaml = new YamlLocationStore(file);
+        LocationStore store = "journal".equals(storeType) ? new JournalLocationStore(dir, logger, 20000, yaml) : yaml;
+        for (String name : new String[]{"locations.yml", "locations.yml.tmp", "locations.yml.migrated", "locations.snapshot", "locations.snapshot.tmp", "locations.journal"}) {
+            new File(dir, name).deleteOnExit();
+        }
+        dir.deleteOnExit();
+        return new LocationManager(store, logger, new Metrics(), true, 3600000L, 3600000L);
+    }
+
+    public static LocationManager load(int switchCount, int groupDepth) throws IOException {
+        return load(switchCount, groupDepth, "yaml");
+    }
+
+    public static String groupId(int index) {
+        return "group_" + index;
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.remoteredstone;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs {@link ScheduledAction}s from a {@link TimingWheel} advanced once per tick on the main
+ * thread, so any number of pending actions costs one task. Web threads only add and cancel
+ * through a command queue that the next tick drains. Everything due in the same tick is applied
+ * as one batch. Definitions are kept in schedules.yml next to the location data, together with
+ * the switch-off still owed by a pulse that has fired, so a restart does not leave it on.
+ */
+public class ActionScheduler implements Runnable {
+
+    private static final long DAY_TICKS = 24000L;
+    private static final long MILLIS_PER_TICK = 50L;
+    private static final List<String> ACTIONS = Arrays.asList("on", "off", "toggle", "pulse");
+
+    private final RemoteRedstone plugin;
+    private final File file;
+    private final Logger logger;
+    private final Metrics.Counter firedCounter;
+    private final TimingWheel<Entry> wheel = new TimingWheel<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Entry> pulseOffs = new ConcurrentHashMap<>();
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final ExecutorService saveExecutor;
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private final AtomicLong lastIdStamp = new AtomicLong();
+    private final Object writeLock = new Object();
+
+    public ActionScheduler(RemoteRedstone plugin, File file) {
+        this.plugin = plugin;
+        this.file = file;
+        this.logger = plugin.getLogger();
+        this.firedCounter = plugin.getMetrics().counter("remoteredstone_scheduled_actions_fired_total", "Scheduled actions executed.");
+        plugin.getMetrics().gauge("remoteredstone_scheduled_actions", "Scheduled actions waiting to run.", entries::size);
+        this.saveExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "RemoteRedstone-Schedules");
+            thread.setDaemon(true);
+            return thread;
+        });
+        load();
+    }
+
+    public ScheduledAction schedule(String targetType, String targetId, String action, long delayTicks, long pulseTicks, long repeatTicks, String world, long worldTime) {
+        if (!"switch".equals(targetType) && !"group".equals(targetType)) throw new IllegalArgumentException("targetType must be switch or group.");
+        LocationSnapshot snapshot = plugin.locationManager.getSnapshot();
+        if ("switch".equals(targetType) ? snapshot.getSwitch(targetId) == null : snapshot.getGroup(targetId) == null) {
+            throw new IllegalArgumentException("Target '" + targetId + "' not found.");
+        }
+        if (!ACTIONS.contains(action)) throw new IllegalArgumentException("action must be one of " + ACTIONS + ".");
+        if ("pulse".equals(action) && pulseTicks <= 0) throw new IllegalArgumentException("pulseTicks is required for pulse.");
+        if (worldTime >= DAY_TICKS) throw new IllegalArgumentException("worldTime must be between 0 and 23999.");
+        ScheduledAction scheduled = new ScheduledAction(nextId(), targetType, targetId, action, pulseTicks, Math.max(0L, repeatTicks), world, worldTime);
+        Entry entry = new Entry(scheduled, false);
+        entry.nextRunMillis = System.currentTimeMillis() + Math.max(1L, delayTicks) * MILLIS_PER_TICK;
+        entries.put(scheduled.getId(), entry);
+        commands.add(() -> arm(entry, scheduled.isDaily() ? ticksUntil(scheduled) : delayTicks));
+        requestSave();
+        return scheduled;
+    }
+
+    /**
+     * Cancels the schedule and the switch-off of a pulse it has already started, if one is due.
+     */
+    public boolean cancel(String id) {
+        Entry entry = entries.remove(id);
+        Entry pulseOff = pulseOffs.remove(id);
+        if (entry == null && pulseOff == null) return false;
+        commands.add(() -> {
+            if (entry != null) wheel.cancel(entry.timer);
+            if (pulseOff != null) wheel.cancel(pulseOff.timer);
+        });
+        requestSave();
+        return true;
+    }
+
+    public List<Map<String, Object>> list() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Entry entry : entries.values()) result.add(toMap(entry));
+        for (Entry pulseOff : pulseOffs.values()) {
+            if (!entries.containsKey(pulseOff.action.getId())) result.add(toMap(pulseOff));
+        }
+        result.sort((a, b) -> Long.compare((Long) a.get("nextRun"), (Long) b.get("nextRun")));
+        return result;
+    }
+
+    public Map<String, Object> toMap(String id) {
+        Entry entry = entries.get(id);
+        if (entry == null) entry = pulseOffs.get(id);
+        return entry != null ? toMap(entry) : null;
+    }
+
+    @Override
+    public void run() {
+        Runnable command;
+        while ((command = commands.poll()) != null) command.run();
+        // Targets cannot be checked against the empty snapshot, so nothing fires before the data is loaded.
+        if (!plugin.locationManager.isReady()) return;
+        List<Entry> due = new ArrayList<>();
+        wheel.advance(due::add);
+        if (due.isEmpty()) return;
+        plugin.flushPendingToggles();
+        LocationSnapshot snapshot = plugin.locationManager.getSnapshot();
+        List<Entry> firing = new ArrayList<>(due.size());
+        List<Boolean> states = new ArrayList<>(due.size());
+        boolean changed = false;
+        for (Entry entry : due) {
+            ScheduledAction action = entry.action;
+            if (owner(entry).get(action.getId()) != entry) continue;
+            if (!targetExists(snapshot, action)) {
+                changed |= drop(entry);
+                continue;
+            }
+            firing.add(entry);
+            states.add(entry.pulseOff ? false : targetState(snapshot, action));
+        }
+        // A web thread can remove a target after the check above; the batch then fails as a whole,
+        // so the rejected actions are taken out and the rest is applied on its own.
+        while (!firing.isEmpty()) {
+            List<BatchOperation> operations = new ArrayList<>(firing.size());
+            for (int i = 0; i < firing.size(); i++) {
+                ScheduledAction action = firing.get(i).action;
+                operations.add(action.isGroup() ? BatchOperation.toggleGroup(action.getTargetId(), states.get(i)) : BatchOperation.toggleSwitch(action.getTargetId(), states.get(i)));
+            }
+            BatchResult result = plugin.applyBatch(operations);
+            if (result.isSuccess()) break;
+            LocationSnapshot current = plugin.locationManager.getSnapshot();
+            int before = firing.size();
+            for (int i = firing.size() - 1; i >= 0; i--) {
+                if (!"error".equals(result.getResults().get(i).get("status"))) continue;
+                Entry entry = firing.remove(i);
+                states.remove(i);
+                if (!targetExists(current, entry.action)) {
+                    changed |= drop(entry);
+                } else {
+                    logger.warning("[Schedule] Could not apply " + entry.action.getId() + ", retrying next tick: " + result.getResults().get(i).get("message"));
+                    arm(entry, 1L);
+                }
+            }
+            if (firing.size() == before) {
+                logger.warning("[Schedule] Could not apply " + before + " scheduled actions, retrying next tick: " + result.getResults());
+                for (Entry entry : firing) arm(entry, 1L);
+                firing.clear();
+            }
+        }
+        for (int i = 0; i < firing.size(); i++) {
+            Entry entry = firing.get(i);
+            ScheduledAction action = entry.action;
+            Switch sw = action.isGroup() ? null : snapshot.getSwitch(action.getTargetId());
+            plugin.getAuditLog().record(action.getId(), "schedule", sw != null ? sw.getId() : null, action.isGroup() ? action.getTargetId() : null,
+                    sw != null ? AuditLog.state(sw.isOn()) : AuditLog.UNKNOWN, AuditLog.state(states.get(i)));
+            firedCounter.inc();
+            changed = true;
+            if (entry.pulseOff) {
+                pulseOffs.remove(action.getId(), entry);
+                continue;
+            }
+            if ("pulse".equals(action.getAction())) {
+                Entry pulseOff = new Entry(action, true);
+                Entry previous = pulseOffs.put(action.getId(), pulseOff);
+                if (previous != null) wheel.cancel(previous.timer);
+                arm(pulseOff, action.getPulseTicks());
+            }
+            if (action.isRecurring()) {
+                arm(entry, action.isDaily() ? ticksUntil(action) : action.getRepeatTicks());
+            } else {
+                entries.remove(action.getId(), entry);
+            }
+        }
+        if (changed) requestSave();
+    }
+
+    private Map<String, Entry> owner(Entry entry) {
+        return entry.pulseOff ? pulseOffs : entries;
+    }
+
+    private static boolean targetExists(LocationSnapshot snapshot, ScheduledAction action) {
+        return action.isGroup() ? snapshot.getGroup(action.getTargetId()) != null : snapshot.getSwitch(action.getTargetId()) != null;
+    }
+
+    private boolean drop(Entry entry) {
+        if (!owner(entry).remove(entry.action.getId(), entry)) return false;
+        if (!entry.pulseOff) logger.info("[Schedule] Dropped " + entry.action.getId() + ": target " + entry.action.getTargetId() + " no longer exists.");
+        return true;
+    }
+
+    public void shutdown() {
+        saveExecutor.shutdown();
+        try {
+            saveExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save();
+    }
+
+    private boolean targetState(LocationSnapshot snapshot, ScheduledAction action) {
+        switch (action.getAction()) {
+            case "off":
+                return false;
+            case "toggle":
+                if (!action.isGroup()) return !snapshot.getSwitch(action.getTargetId()).isOn();
+                for (String switchId : snapshot.getSwitchIdsInSubtree(action.getTargetId())) {
+                    if (snapshot.getSwitch(switchId).isOn()) return false;
+                }
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private void arm(Entry entry, long delayTicks) {
+        long delay = Math.max(1L, delayTicks);
+        entry.timer = wheel.schedule(delay, entry);
+        entry.nextRunMillis = System.currentTimeMillis() + delay * MILLIS_PER_TICK;
+    }
+
+    private long ticksUntil(ScheduledAction action) {
+        World world = Bukkit.getWorld(action.getWorld());
+        if (world == null) return DAY_TICKS;
+        long ticks = Math.floorMod(action.getWorldTime() - world.getTime(), DAY_TICKS);
+        return ticks == 0 ? DAY_TICKS : ticks;
+    }
+
+    private String nextId() {
+        long stamp = lastIdStamp.updateAndGet(last -> Math.max(System.currentTimeMillis(), last + 1));
+        return "schedule_" + stamp;
+    }
+
+    private Map<String, Object> toMap(Entry entry) {
+        ScheduledAction action = entry.action;
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", action.getId());
+        data.put("targetType", action.getTargetType());
+        data.put("targetId", action.getTargetId());
+        data.put("action", action.getAction());
+        if (action.getPulseTicks() > 0) data.put("pulseTicks", action.getPulseTicks());
+        if (action.getRepeatTicks() > 0) data.put("repeatTicks", action.getRepeatTicks());
+        if (action.isDaily()) {
+            data.put("world", action.getWorld());
+            data.put("worldTime", action.getWorldTime());
+        }
+        data.put("nextRun", entry.nextRunMillis);
+        Entry pulseOff = entry.pulseOff ? entry : pulseOffs.get(action.getId());
+        if (pulseOff != null) data.put("pulseOffAt", pulseOff.nextRunMillis);
+        return data;
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        ConfigurationSection section = YamlConfiguration.loadConfiguration(file).getConfigurationSection("schedules");
+        if (section == null) return;
+        long now = System.currentTimeMillis();
+        for (String id : section.getKeys(false)) {
+            ConfigurationSection s = section.getConfigurationSection(id);
+            if (s == null) continue;
+            ScheduledAction action = new ScheduledAction(id, s.getString("type", "switch"), s.getString("target"), s.getString("action", "on"),
+                    s.getLong("pulse", 0L), s.getLong("repeat", 0L), s.getString("world"), s.getLong("time", -1L));
+            if (s.contains("pulse-off")) {
+                // A switch-off that fell due while the server was down fires on the first tick.
+                Entry pulseOff = new Entry(action, true);
+                pulseOff.nextRunMillis = s.getLong("pulse-off");
+                pulseOffs.put(id, pulseOff);
+                long offTicks = (pulseOff.nextRunMillis - now) / MILLIS_PER_TICK;
+                commands.add(() -> arm(pulseOff, offTicks));
+            }
+            // A pulse that has run for the last time is only kept for its switch-off.
+            if (!s.contains("next") && s.contains("pulse-off")) continue;
+            Entry entry = new Entry(action, false);
+            long nextRun = s.getLong("next", now);
+            if (action.getRepeatTicks() > 0 && nextRun < now) {
+                long period = action.getRepeatTicks() * MILLIS_PER_TICK;
+                nextRun += ((now - nextRun + period - 1) / period) * period;
+            }
+            entry.nextRunMillis = nextRun;
+            entries.put(id, entry);
+            long delayTicks = (nextRun - now) / MILLIS_PER_TICK;
+            commands.add(() -> arm(entry, action.isDaily() ? ticksUntil(action) : delayTicks));
+        }
+        logger.info("Loaded " + entries.size() + " scheduled actions and " + pulseOffs.size() + " pending pulse switch-offs.");
+    }
+
+    private void requestSave() {
+        if (savePending.compareAndSet(false, true) && !saveExecutor.isShutdown()) {
+            saveExecutor.execute(() -> {
+                savePending.set(false);
+                save();
+            });
+        }
+    }
+
+    private void save() {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.createSection("schedules");
+        Map<String, Entry> definitions = new LinkedHashMap<>(pulseOffs);
+        definitions.putAll(entries);
+        for (Entry entry : definitions.values()) {
+            ScheduledAction action = entry.action;
+            String path = "schedules." + action.getId();
+            yaml.set(path + ".type", action.getTargetType());
+            yaml.set(path + ".target", action.getTargetId());
+            yaml.set(path + ".action", action.getAction());
+            if (action.getPulseTicks() > 0) yaml.set(path + ".pulse", action.getPulseTicks());
+            if (action.getRepeatTicks() > 0) yaml.set(path + ".repeat", action.getRepeatTicks());
+            if (action.isDaily()) {
+                yaml.set(path + ".world", action.getWorld());
+                yaml.set(path + ".time", action.getWorldTime());
+            }
+            if (!entry.pulseOff) yaml.set(path + ".next", entry.nextRunMillis);
+            Entry pulseOff = pulseOffs.get(action.getId());
+            if (pulseOff != null) yaml.set(path + ".pulse-off", pulseOff.nextRunMillis);
+        }
+        synchronized (writeLock) {
+            File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            try {
+                Files.write(tempFile.toPath(), yaml.saveToString().getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                logger.severe("Could not save " + file.getName() + "! " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Entry {
+        final ScheduledAction action;
+        final boolean pulseOff;
+        volatile long nextRunMillis;
+        TimingWheel.Timer<Entry> timer;
+
+        Entry(ScheduledAction action, boolean pulseOff) {
+            this.action = action;
+            this.pulseOff = pulseOff;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.remoteredstone;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Who changed which switch or group, written as one JSON object per line to {@code audit.log}.
+ * {@link #record} only claims a slot in a fixed ring buffer with a compare-and-set and stores the
+ * field references, so the server thread and web threads never format text or touch the file;
+ * when the buffer is full the record is dropped and counted. A background thread drains the
+ * buffer, writes the records in batches, rotates the file by size and keeps the most recent
+ * entries in memory for {@code /api/audit}.
+ */
+public class AuditLog {
+
+    public static final int UNKNOWN = -1;
+    public static final int OFF = 0;
+    public static final int ON = 1;
+
+    private final File file;
+    private final Logger logger;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final int recentLimit;
+    private final Metrics.Counter writtenCounter;
+    private final Metrics.Counter droppedCounter;
+
+    private final int mask;
+    private final long[] times;
+    private final String[] actors;
+    private final String[] endpoints;
+    private final String[] switchIds;
+    private final String[] groupIds;
+    private final byte[] oldStates;
+    private final byte[] newStates;
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    private final ArrayDeque<Entry> recent = new ArrayDeque<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private OutputStream out;
+    private long fileBytes;
+
+    public AuditLog(File file, Logger logger, Metrics metrics, int bufferSize, long maxFileBytes, int maxFiles, int recentLimit) {
+        this.file = file;
+        this.logger = logger;
+        this.maxFileBytes = maxFileBytes > 0 ? maxFileBytes : Long.MAX_VALUE;
+        this.maxFiles = Math.max(0, maxFiles);
+        this.recentLimit = Math.max(0, recentLimit);
+        int capacity = 64;
+        while (capacity < bufferSize) capacity <<= 1;
+        this.mask = capacity - 1;
+        this.times = new long[capacity];
+        this.actors = new String[capacity];
+        this.endpoints = new String[capacity];
+        this.switchIds = new String[capacity];
+        this.groupIds = new String[capacity];
+        this.oldStates = new byte[capacity];
+        this.newStates = new byte[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.writtenCounter = metrics.counter("remoteredstone_audit_records_total", "Audit records written to audit.log.");
+        this.droppedCounter = metrics.counter("remoteredstone_audit_dropped_total", "Audit records dropped because the buffer was full.");
+        metrics.gauge("remoteredstone_audit_buffered", "Audit records waiting for the writer.", () -> head.get() - tail);
+        this.writer = new Thread(this::runWriter, "RemoteRedstone-Audit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public static int state(boolean isON) {
+        return isON ? ON : OFF;
+    }
+
+    /**
+     * Queues a record. Any of the ids may be null; states are {@link #ON}, {@link #OFF} or
+     * {@link #UNKNOWN}. Safe to call from any thread and never blocks.
+     */
+    public void record(String actor, String endpoint, String switchId, String groupId, int oldState, int newState) {
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail > mask) {
+                droppedCounter.inc();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        times[slot] = System.currentTimeMillis();
+        actors[slot] = actor;
+        endpoints[slot] = endpoint;
+        switchIds[slot] = switchId;
+        groupIds[slot] = groupId;
+        oldStates[slot] = (byte) oldState;
+        newStates[slot] = (byte) newState;
+        published.lazySet(slot, seq + 1);
+    }
+
+    /**
+     * The most recent written entries matching every non-null filter, newest first.
+     */
+    public List<Map<String, Object>> query(String actor, String endpoint, String switchId, String groupId, long sinceMillis, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        synchronized (recent) {
+            Iterator<Entry> it = recent.descendingIterator();
+            while (it.hasNext() && result.size() < limit) {
+                Entry entry = it.next();
+                if (entry.time < sinceMillis) break;
+                if (matches(actor, entry.actor) && matches(endpoint, entry.endpoint) && matches(switchId, entry.switchId) && matches(groupId, entry.groupId)) {
+                    result.add(entry.toMap());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes what is still buffered and stops the writer thread.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean matches(String filter, String value) {
+        return filter == null || filter.equals(value);
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>();
+        try {
+            while (true) {
+                boolean stopping = !running;
+                drain(batch);
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    batch.clear();
+                } else if (stopping) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                }
+            }
+        } finally {
+            closeFile();
+        }
+    }
+
+    private void drain(List<Entry> batch) {
+        long t = tail;
+        long h = head.get();
+        while (t < h) {
+            int slot = (int) t & mask;
+            // A producer that claimed this slot may not have filled it yet; pick it up next round.
+            if (published.get(slot) != t + 1) break;
+            batch.add(new Entry(times[slot], actors[slot], endpoints[slot], switchIds[slot], groupIds[slot], oldStates[slot], newStates[slot]));
+            actors[slot] = null;
+            endpoints[slot] = null;
+            switchIds[slot] = null;
+            groupIds[slot] = null;
+            t++;
+        }
+        tail = t;
+    }
+
+    private void write(List<Entry> batch) {
+        StringBuilder line = new StringBuilder(256);
+        try {
+            for (Entry entry : batch) {
+                line.setLength(0);
+                entry.appendJson(line);
+                line.append('\n');
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                if (out != null && fileBytes > 0 && fileBytes + bytes.length > maxFileBytes) rotate();
+                if (out == null) open();
+                out.write(bytes);
+                fileBytes += bytes.length;
+            }
+            out.flush();
+            writtenCounter.add(batch.size());
+        } catch (IOException e) {
+            logger.warning("Could not write the audit log: " + e.getMessage());
+            closeFile();
+        }
+        synchronized (recent) {
+            for (Entry entry : batch) {
+                recent.addLast(entry);
+                if (recent.size() > recentLimit) recent.removeFirst();
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        out = new BufferedOutputStream(new FileOutputStream(file, true), 65536);
+        fileBytes = file.length();
+    }
+
+    /**
+     * Moves {@code audit.log} to {@code audit.log.1}, shifting older files up and deleting the one
+     * past {@code maxFiles}.
+     */
+    private void rotate() throws IOException {
+        closeFile();
+        if (maxFiles == 0) {
+            if (!file.delete()) throw new IOException("Could not delete " + file.getName());
+            return;
+        }
+        File oldest = new File(file.getPath() + "." + maxFiles);
+        if (oldest.exists() && !oldest.delete()) throw new IOException("Could not delete " + oldest.getName());
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File from = new File(file.getPath() + "." + i);
+            if (from.exists() && !from.renameTo(new File(file.getPath() + "." + (i + 1)))) throw new IOException("Could not rotate " + from.getName());
+        }
+        if (!file.renameTo(new File(file.getPath() + ".1"))) throw new IOException("Could not rotate " + file.getName());
+    }
+
+    private void closeFile() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warning("Could not close the audit log: " + e.getMessage());
+        }
+        out = null;
+    }
+
+    private static final class Entry {
+        final long time;
+        final String actor;
+        final String endpoint;
+        final String switchId;
+        final String groupId;
+        final int oldState;
+        final int newState;
+
+        Entry(long time, String actor, String endpoint, String switchId, String groupId, int oldState, int newState) {
+            this.time = time;
+            this.actor = actor;
+            this.endpoint = endpoint;
+            this.switchId = switchId;
+            this.groupId = groupId;
+            this.oldState = oldState;
+            this.newState = newState;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("time", DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(time)));
+            map.put("actor", actor);
+            map.put("endpoint", endpoint);
+            if (switchId != null) map.put("switchId", switchId);
+            if (groupId != null) map.put("groupId", groupId);
+            if (oldState != UNKNOWN) map.put("old", stateName(oldState));
+            if (newState != UNKNOWN) map.put("new", stateName(newState));
+            return map;
+        }
+
+        void appendJson(StringBuilder out) {
+            out.append("{\"time\":\"");
+            DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(time), out);
+            out.append('"');
+            appendField(out, "actor", actor);
+            appendField(out, "endpoint", endpoint);
+            appendField(out, "switchId", switchId);
+            appendField(out, "groupId", groupId);
+            if (oldState != UNKNOWN) appendField(out, "old", stateName(oldState));
+            if (newState != UNKNOWN) appendField(out, "new", stateName(newState));
+            out.append('}');
+        }
+
+        private static String stateName(int state) {
+            return state == ON ? "ON" : "OFF";
+        }
+
+        private static void appendField(StringBuilder out, String name, String value) {
+            if (value == null) return;
+            out.append(",\"").append(name).append("\":\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') out.append('\\').append(c);
+                else if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                else out.append(c);
+            }
+            out.append('"');
+        }
+    }
+}
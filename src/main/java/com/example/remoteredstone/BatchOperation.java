@@ -0,0 +1,57 @@
+package com.example.remoteredstone;
+
+/**
+ * One entry of a {@code /api/batch} request. Which fields are read depends on {@link #op}:
+ * <ul>
+ *     <li>{@code add-group}: name, memo, parentId</li>
+ *     <li>{@code update-group}: groupId, name, memo</li>
+ *     <li>{@code move-group}: groupId, parentId (empty for top level)</li>
+ *     <li>{@code remove-group}: groupId</li>
+ *     <li>{@code toggle-group}: groupId, state</li>
+ *     <li>{@code add-switch}: name, world, x, y, z, groupId</li>
+ *     <li>{@code update-switch}: switchId, name</li>
+ *     <li>{@code remove-switch}: switchId</li>
+ *     <li>{@code toggle-switch}: switchId, state</li>
+ * </ul>
+ * {@code state} is {@code set}/{@code on} or {@code clear}/{@code off}, as in the single-item endpoints.
+ */
+public class BatchOperation {
+
+    String op;
+    String switchId;
+    String groupId;
+    String parentId;
+    String name;
+    String memo;
+    String world;
+    Integer x;
+    Integer y;
+    Integer z;
+    String state;
+
+    static BatchOperation toggleSwitch(String switchId, boolean isON) {
+        BatchOperation operation = new BatchOperation();
+        operation.op = "toggle-switch";
+        operation.switchId = switchId;
+        operation.state = isON ? "on" : "off";
+        return operation;
+    }
+
+    static BatchOperation toggleGroup(String groupId, boolean isON) {
+        BatchOperation operation = new BatchOperation();
+        operation.op = "toggle-group";
+        operation.groupId = groupId;
+        operation.state = isON ? "on" : "off";
+        return operation;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    boolean isOn() {
+        if ("set".equalsIgnoreCase(state) || "on".equalsIgnoreCase(state)) return true;
+        if ("clear".equalsIgnoreCase(state) || "off".equalsIgnoreCase(state)) return false;
+        throw new IllegalArgumentException("state must be set/on or clear/off.");
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.remoteredstone;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of {@link LocationManager#applyBatch}: one result entry per operation, plus the switch
+ * blocks that have to be placed or cleared once the batch has been committed.
+ */
+public class BatchResult {
+
+    private final List<Map<String, Object>> results = new ArrayList<>();
+    private final List<Switch> placedSwitches = new ArrayList<>();
+    private final List<Switch> removedSwitches = new ArrayList<>();
+    private boolean success = true;
+
+    void addResult(Map<String, Object> result, boolean ok) {
+        results.add(result);
+        if (!ok) success = false;
+    }
+
+    void place(Switch sw) {
+        placedSwitches.add(sw);
+    }
+
+    void remove(Switch sw) {
+        removedSwitches.add(sw);
+    }
+
+    /**
+     * Called when another operation failed and nothing was committed: results that passed
+     * validation are reported as not applied, without the ids or values they would have had.
+     */
+    void reject() {
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            if (!"success".equals(result.get("status"))) continue;
+            Map<String, Object> rejected = new LinkedHashMap<>();
+            rejected.put("index", result.get("index"));
+            rejected.put("op", result.get("op"));
+            rejected.put("status", "not applied");
+            rejected.put("message", "Not applied because another operation in the batch failed.");
+            results.set(i, rejected);
+        }
+        placedSwitches.clear();
+        removedSwitches.clear();
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public List<Map<String, Object>> getResults() {
+        return results;
+    }
+
+    public List<Switch> getPlacedSwitches() {
+        return placedSwitches;
+    }
+
+    public List<Switch> getRemovedSwitches() {
+        return removedSwitches;
+    }
+}
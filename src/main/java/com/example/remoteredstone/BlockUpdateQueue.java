@@ -0,0 +1,212 @@
+package com.example.remoteredstone;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Collects block changes from any thread and applies them on the main thread, one chunk at a time,
+ * within a per-tick budget. A later update to the same block replaces an earlier pending one.
+ * How neighbours learn about a change depends on {@link Physics}.
+ */
+public class BlockUpdateQueue implements Runnable {
+
+    public interface Listener {
+        void onBlockUpdated(String world, int x, int y, int z, Material material);
+    }
+
+    /**
+     * Placement strategy. {@code NORMAL} places each block with physics, so attached redstone
+     * reacts at once. {@code NONE} places blocks without physics, so neighbours only react to
+     * their next unrelated update.
+     */
+    public enum Physics {
+        NORMAL, NONE;
+
+        public static Physics parse(String value) {
+            for (Physics physics : values()) {
+                if (physics.name().equalsIgnoreCase(value)) return physics;
+            }
+            return NORMAL;
+        }
+    }
+
+    private final Logger logger;
+    private volatile Listener listener;
+    private final int maxUpdatesPerTick;
+    private final long maxNanosPerTick;
+    private final Metrics.Counter queuedCounter;
+    private final Metrics.Counter appliedCounter;
+    private final Metrics.Counter skippedCounter;
+    private final Metrics.Counter chunkLoadCounter;
+    private final Physics physics;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<ChunkKey, LinkedHashMap<Long, BlockUpdate>> pending = new LinkedHashMap<>();
+    private volatile int pendingCount;
+
+    private ChunkKey currentChunk;
+    private World currentWorld;
+    private Iterator<BlockUpdate> currentUpdates;
+
+    public BlockUpdateQueue(Logger logger, Metrics metrics, int maxUpdatesPerTick, long maxMicrosPerTick) {
+        this(logger, metrics, maxUpdatesPerTick, maxMicrosPerTick, Physics.NORMAL);
+    }
+
+    public BlockUpdateQueue(Logger logger, Metrics metrics, int maxUpdatesPerTick, long maxMicrosPerTick, Physics physics) {
+        this.logger = logger;
+        this.physics = physics;
+        this.maxUpdatesPerTick = maxUpdatesPerTick > 0 ? maxUpdatesPerTick : Integer.MAX_VALUE;
+        this.maxNanosPerTick = maxMicrosPerTick > 0 ? maxMicrosPerTick * 1000L : Long.MAX_VALUE;
+        this.queuedCounter = metrics.counter("remoteredstone_block_updates_queued_total", "Block updates requested, including ones that replaced a pending update.");
+        this.appliedCounter = metrics.counter("remoteredstone_block_updates_applied_total", "Blocks whose type was changed by the update queue.");
+        this.skippedCounter = metrics.counter("remoteredstone_block_updates_skipped_total", "Queued updates dropped because the block already had the target type.");
+        this.chunkLoadCounter = metrics.counter("remoteredstone_block_update_chunk_loads_total", "Chunks loaded by the update queue to place switch blocks.");
+        metrics.gauge("remoteredstone_block_updates_pending", "Block updates waiting for a tick.", () -> pendingCount);
+    }
+
+    public void enqueue(String worldName, int x, int y, int z, Material material) {
+        ChunkKey chunkKey = new ChunkKey(worldName, x >> 4, z >> 4);
+        synchronized (lock) {
+            LinkedHashMap<Long, BlockUpdate> updates = pending.computeIfAbsent(chunkKey, k -> new LinkedHashMap<>());
+            if (updates.put(blockKey(x, y, z), new BlockUpdate(x, y, z, material)) == null) {
+                pendingCount++;
+            }
+        }
+        queuedCounter.inc();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Override
+    public void run() {
+        if (pendingCount == 0 && currentUpdates == null) return;
+        long start = System.nanoTime();
+        int budget = maxUpdatesPerTick;
+        int applied = 0;
+        int skipped = 0;
+        int chunkLoads = 0;
+        while (budget > 0 && System.nanoTime() - start < maxNanosPerTick) {
+            if (currentUpdates == null || !currentUpdates.hasNext()) {
+                if (!takeNextChunk()) break;
+                currentWorld = Bukkit.getWorld(currentChunk.world);
+                if (currentWorld == null) {
+                    currentUpdates = null;
+                    continue;
+                }
+                if (!currentWorld.isChunkLoaded(currentChunk.x, currentChunk.z)) {
+                    currentWorld.getChunkAt(currentChunk.x, currentChunk.z).load();
+                    chunkLoads++;
+                }
+            }
+            BlockUpdate update = currentUpdates.next();
+            budget--;
+            Block block = currentWorld.getBlockAt(update.x, update.y, update.z);
+            if (block.getType() == update.material) {
+                skipped++;
+            } else {
+                place(block, update.material);
+                applied++;
+            }
+            Listener current = listener;
+            if (current != null) {
+                current.onBlockUpdated(currentChunk.world, update.x, update.y, update.z, update.material);
+            }
+        }
+        appliedCounter.add(applied);
+        skippedCounter.add(skipped);
+        chunkLoadCounter.add(chunkLoads);
+        if (applied > 0 || chunkLoads > 0) {
+            logger.info("[Action] Applied " + applied + " block updates (" + skipped + " unchanged, " + chunkLoads + " chunk loads, " + pendingCount + " pending).");
+        }
+    }
+
+    public void drainAll() {
+        while (pendingCount > 0 || (currentUpdates != null && currentUpdates.hasNext())) {
+            run();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void place(Block block, Material material) {
+        if (physics == Physics.NONE) {
+            block.setTypeId(material.getId(), false);
+        } else {
+            block.setType(material);
+        }
+    }
+
+    private boolean takeNextChunk() {
+        synchronized (lock) {
+            Iterator<Map.Entry<ChunkKey, LinkedHashMap<Long, BlockUpdate>>> it = pending.entrySet().iterator();
+            if (!it.hasNext()) {
+                currentChunk = null;
+                currentWorld = null;
+                currentUpdates = null;
+                return false;
+            }
+            Map.Entry<ChunkKey, LinkedHashMap<Long, BlockUpdate>> next = it.next();
+            it.remove();
+            pendingCount -= next.getValue().size();
+            currentChunk = next.getKey();
+            currentUpdates = next.getValue().values().iterator();
+            return true;
+        }
+    }
+
+    private static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0xF) << 12) | ((long) (z & 0xF) << 8) | (y & 0xFF);
+    }
+
+    private static final class BlockUpdate {
+        final int x;
+        final int y;
+        final int z;
+        final Material material;
+
+        BlockUpdate(int x, int y, int z, Material material) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.material = material;
+        }
+    }
+
+    private static final class ChunkKey {
+        final String world;
+        final int x;
+        final int z;
+
+        ChunkKey(String world, int x, int z) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ChunkKey)) return false;
+            ChunkKey other = (ChunkKey) o;
+            return x == other.x && z == other.z && world.equals(other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world, x, z);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.remoteredstone;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs NanoHTTPD connections on a fixed-size pool with a bounded queue instead of one new thread
+ * per connection. Connections that arrive while the pool and queue are full are handed to the
+ * reject handler immediately.
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+
+    public interface RejectHandler {
+        void reject(NanoHTTPD.ClientHandler handler);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final RejectHandler rejectHandler;
+    private final int maxThreads;
+    private final int maxQueued;
+    private final Set<NanoHTTPD.ClientHandler> running = ConcurrentHashMap.newKeySet();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedAsyncRunner(int maxThreads, int maxQueued, RejectHandler rejectHandler) {
+        this.maxThreads = Math.max(1, maxThreads);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.rejectHandler = rejectHandler;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.maxThreads, this.maxThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(this.maxQueued), r -> {
+                    Thread thread = new Thread(r, "RemoteRedstone-Web-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler code) {
+        running.add(code);
+        try {
+            executor.execute(code);
+            accepted.increment();
+        } catch (RejectedExecutionException e) {
+            running.remove(code);
+            rejected.increment();
+            rejectHandler.reject(code);
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler clientHandler) {
+        running.remove(clientHandler);
+    }
+
+    @Override
+    public void closeAll() {
+        for (NanoHTTPD.ClientHandler handler : new ArrayList<>(running)) {
+            handler.close();
+        }
+        executor.shutdownNow();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("open", running.size());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("maxThreads", maxThreads);
+        stats.put("maxQueued", maxQueued);
+        return stats;
+    }
+}
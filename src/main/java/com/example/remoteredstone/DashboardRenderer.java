@@ -0,0 +1,181 @@
+package com.example.remoteredstone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Renders the dashboard page. Each group's own markup is cached against its revision in the
+ * snapshot, so a mutation only re-renders the groups it touched. The assembled page is kept
+ * together with a gzip copy until the snapshot version changes.
+ */
+public class DashboardRenderer {
+
+    private final String worldOptions;
+    private final String pluginVersion;
+    private final StaticAssets assets;
+    private final String instanceId = Long.toHexString(System.currentTimeMillis());
+    private final Map<String, Fragment> fragments = new ConcurrentHashMap<>();
+    private volatile Page page;
+
+    public DashboardRenderer(List<String> worldNames, String pluginVersion, StaticAssets assets) {
+        this.worldOptions = worldNames.stream().map(name -> "<option value='" + name + "'>" + name + "</option>").collect(Collectors.joining());
+        this.pluginVersion = pluginVersion;
+        this.assets = assets;
+    }
+
+    public String etagFor(LocationSnapshot snapshot) {
+        return "\"" + instanceId + "-" + snapshot.getVersion() + "\"";
+    }
+
+    public Page render(LocationSnapshot snapshot) {
+        Page current = page;
+        if (current != null && current.version == snapshot.getVersion()) return current;
+        synchronized (this) {
+            current = page;
+            if (current != null && current.version == snapshot.getVersion()) return current;
+            byte[] html = generateDashboard(snapshot).getBytes(StandardCharsets.UTF_8);
+            current = new Page(snapshot.getVersion(), etagFor(snapshot), html, gzip(html));
+            if (page == null || page.version < current.version) page = current;
+            fragments.keySet().retainAll(snapshot.getGroups().keySet());
+            return current;
+        }
+    }
+
+    public String renderGroupHtml(LocationSnapshot snapshot, String groupId) {
+        Group group = snapshot.getGroup(groupId);
+        if (group == null) return null;
+        StringBuilder html = new StringBuilder();
+        renderGroup(html, group, snapshot);
+        return html.toString();
+    }
+
+    public String renderSwitchRow(Switch sw) {
+        StringBuilder html = new StringBuilder();
+        renderSwitchRow(html, sw);
+        return html.toString();
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private String generateDashboard(LocationSnapshot snapshot) {
+
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html lang='ja'><head><meta charset='UTF-8'><title>Remote Redstone Dashboard</title><meta name='viewport' content='width=device-width, initial-scale=1'>");
+        html.append("<link rel='stylesheet' href='").append(assets.url("dashboard.css")).append("'>");
+        html.append("<script src='").append(assets.sortableUrl()).append("' defer></script>");
+        html.append("<script src='").append(assets.url("dashboard.js")).append("' defer></script>");
+        html.append("</head><body><div class='container' id='main-container'><h1>Redstone Dashboard</h1><div id='message-box' class='msg'></div>");
+        html.append("<h2>Search Groups</h2><input type='search' id='group-search' class='search-bar' placeholder='グループ名で検索...'>");
+        html.append("<h2>Add New Top-Level Group</h2><form data-action='add-group'><input type='hidden' name='parentId' value=''><input name='groupName' placeholder='New Group Name' required><input name='memo' placeholder='Memo (optional)'><button type='submit' class='btn'>Create Group</button></form>");
+
+        snapshot.getTopLevelGroups().forEach(group -> renderGroup(html, group, snapshot));
+
+        html.append("</div><footer><p>RemoteRedstone Plugin Version: ").append(pluginVersion).append("</p></footer>");
+        html.append("</div></body></html>");
+        return html.toString();
+    }
+
+    private void renderGroup(StringBuilder html, Group group, LocationSnapshot snapshot) {
+        long revision = snapshot.getGroupRevision(group.getId());
+        Fragment fragment = fragments.get(group.getId());
+        if (fragment == null || fragment.revision != revision) {
+            fragment = renderFragment(group, snapshot, revision);
+            fragments.put(group.getId(), fragment);
+        }
+        html.append(fragment.head);
+        snapshot.getChildGroups(group.getId()).forEach(child -> renderGroup(html, child, snapshot));
+        html.append(fragment.tail);
+    }
+
+    private Fragment renderFragment(Group group, LocationSnapshot snapshot, long revision) {
+        StringBuilder h = new StringBuilder();
+        String groupId = group.getId();
+        String groupName = group.getName();
+        String groupMemo = group.getMemo();
+        String groupClass = group.isSubGroup() ? "group sub-group" : "group";
+
+        h.append("<div class='").append(groupClass).append("' id='").append(groupId).append("' data-group-name='").append(groupName).append("'>");
+        h.append("<div data-editable data-group-id='").append(groupId).append("'>");
+
+        h.append("<div class='group-header display-view'>");
+        h.append("<div class='group-title'><span class='drag-handle'>&#9776;</span><span class='group-toggle' data-action='toggle-visibility'>▶</span><h3>").append(groupName).append("</h3>");
+        if (!groupMemo.isEmpty()) h.append("<span class='group-header-memo'> - ").append(groupMemo).append("</span>");
+        h.append("</div>");
+        h.append("<div class='header-actions'>");
+        h.append("<button class='btn btn-on' data-action='toggle-group' data-group-id='").append(groupId).append("' data-state='set'>All ON</button>");
+        h.append("<button class='btn btn-off' data-action='toggle-group' data-group-id='").append(groupId).append("' data-state='clear'>All OFF</button>");
+        h.append("<button class='btn btn-del' data-action='remove-group' data-group-id='").append(groupId).append("'>Delete Group</button>");
+        h.append("<button class='btn btn-edit' data-action='edit-item'>Edit</button>");
+        h.append("</div></div>");
+
+        h.append("<div class='group-header edit-form'><div><input type='text' name='newName' value='").append(groupName).append("'><input type='text' name='newMemo' value='").append(groupMemo).append("' placeholder='Memo'></div><div class='edit-actions'><button class='btn btn-save' data-action='save-group'>Save</button><button class='btn btn-cancel' data-action='cancel-edit'>Cancel</button></div></div></div>");
+
+        h.append("<div class='group-content collapsed'>");
+        h.append("<table><thead><tr><th>Name</th><th>Location</th><th>Actions</th></tr></thead><tbody>");
+        List<Switch> switches = snapshot.getSwitchesInGroup(groupId);
+        for (Switch sw : switches) {
+            renderSwitchRow(h, sw);
+        }
+        if (switches.isEmpty()) h.append("<tr><td colspan='3'>No switches in this group yet.</td></tr>");
+        h.append("</tbody></table>");
+        String head = h.toString();
+        h.setLength(0);
+
+        h.append("<h4>Add Sub-Group to '").append(groupName).append("'</h4><form data-action='add-group'><input type='hidden' name='parentId' value='").append(groupId).append("'><input name='groupName' placeholder='New Sub-Group Name' required><input name='memo' placeholder='Memo (optional)'><button type='submit' class='btn'>Create Sub-Group</button></form>");
+        h.append("<h4>Add Switch to '").append(groupName).append("'</h4><form data-action='add-switch'><input type='hidden' name='group' value='").append(groupId).append("'><input name='name' placeholder='Switch Name (e.g. メイン照明)' required><select name='world' required>").append(worldOptions).append("</select><input type='number' name='x' placeholder='X' required><input type='number' name='y' placeholder='Y' required><input type='number' name='z' placeholder='Z' required><div class='coord-selector'><input name='playerName' placeholder='Your IGN for Wand'><button type='button' class='btn' data-action='request-wand'>Select Block</button></div><button type='submit' class='btn'>Add Switch</button></form>");
+
+        h.append("</div></div>");
+        return new Fragment(revision, head, h.toString());
+    }
+
+    private void renderSwitchRow(StringBuilder h, Switch sw) {
+        String switchId = sw.getId();
+        String switchName = sw.getName();
+        boolean isInitiallyON = sw.isOn();
+        String locStr = sw.getWorld() + " @ " + sw.getX() + ", " + sw.getY() + ", " + sw.getZ();
+        h.append("<tr data-switch-id='").append(switchId).append("'><td data-editable data-switch-id='").append(switchId).append("'><div class='switch-name-cell display-view'><span>").append(switchName).append("</span><button class='btn btn-edit btn-sm' data-action='edit-item'>Edit</button></div><div class='edit-form'><input type='text' name='newName' value='").append(switchName).append("'><div class='edit-actions'><button class='btn btn-save' data-action='save-switch'>Save</button><button class='btn btn-cancel' data-action='cancel-edit'>Cancel</button></div></div></td><td>").append(locStr).append("</td><td>");
+        h.append("<button class='btn btn-on' data-action='toggle-switch' data-switch-id='").append(switchId).append("' data-state='set' ").append(isInitiallyON ? "disabled" : "").append(">ON</button>");
+        h.append("<button class='btn btn-off' data-action='toggle-switch' data-switch-id='").append(switchId).append("' data-state='clear' ").append(!isInitiallyON ? "disabled" : "").append(">OFF</button>");
+        h.append("<button class='btn btn-del' data-action='remove-switch' data-switch-id='").append(switchId).append("' data-switch-name='").append(switchName).append("'>Delete</button>");
+        h.append("</td></tr>");
+    }
+
+    public static final class Page {
+        public final long version;
+        public final String etag;
+        public final byte[] html;
+        public final byte[] gzippedHtml;
+
+        Page(long version, String etag, byte[] html, byte[] gzippedHtml) {
+            this.version = version;
+            this.etag = etag;
+            this.html = html;
+            this.gzippedHtml = gzippedHtml;
+        }
+    }
+
+    private static final class Fragment {
+        final long revision;
+        final String head;
+        final String tail;
+
+        Fragment(long revision, String head, String tail) {
+            this.revision = revision;
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.remoteredstone;
+
+public final class Group {
+
+    private final String id;
+    private final String name;
+    private final String memo;
+    private final long order;
+    private final String parentId;
+
+    public Group(String id, String name, String memo, long order, String parentId) {
+        this.id = id;
+        this.name = name;
+        this.memo = memo == null ? "" : memo;
+        this.order = order;
+        this.parentId = parentId == null || parentId.isEmpty() ? null : parentId;
+    }
+
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public String getMemo() { return memo; }
+    public long getOrder() { return order; }
+    public String getParentId() { return parentId; }
+    public boolean isSubGroup() { return parentId != null; }
+
+    public Group withDetails(String newName, String newMemo) {
+        return new Group(id, newName, newMemo, order, parentId);
+    }
+
+    public Group withOrder(long newOrder) {
+        return newOrder == order ? this : new Group(id, name, memo, newOrder, parentId);
+    }
+
+    public Group withParent(String newParentId) {
+        return new Group(id, name, memo, order, newParentId);
+    }
+}
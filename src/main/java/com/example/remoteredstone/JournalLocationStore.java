@@ -0,0 +1,254 @@
+package com.example.remoteredstone;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Keeps locations as a snapshot file plus an append-only journal, both line-delimited JSON. A save
+ * appends one record per changed switch or group; once the journal holds enough records it is
+ * folded into a new snapshot and truncated. Every journal record carries a sequence number and
+ * the snapshot stores the last one it contains, so records that survive a crash between the two
+ * steps are skipped on replay.
+ */
+public class JournalLocationStore implements LocationStore {
+
+    private static final int FORMAT = 1;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Logger logger;
+    private final int compactAfterRecords;
+    private final YamlLocationStore legacy;
+    private final Gson gson = new Gson();
+
+    private OutputStream journal;
+    private long seq;
+    private long journalRecords;
+    private boolean compactOnNextSave;
+
+    public JournalLocationStore(File dataFolder, Logger logger, int compactAfterRecords, YamlLocationStore legacy) {
+        this.snapshotFile = new File(dataFolder, "locations.snapshot");
+        this.journalFile = new File(dataFolder, "locations.journal");
+        this.logger = logger;
+        this.compactAfterRecords = Math.max(1, compactAfterRecords);
+        this.legacy = legacy;
+    }
+
+    /**
+     * Whether {@code dataFolder} holds a snapshot or journal written by this store.
+     */
+    public static boolean exists(File dataFolder) {
+        return new File(dataFolder, "locations.snapshot").exists() || new File(dataFolder, "locations.journal").exists();
+    }
+
+    @Override
+    public synchronized LocationSnapshot load() throws IOException {
+        if (!snapshotFile.exists() && !journalFile.exists() && legacy != null && legacy.getFile().exists()) {
+            return migrate();
+        }
+        LocationSnapshot.Builder builder = LocationSnapshot.EMPTY.toBuilder();
+        long snapshotSeq = 0L;
+        if (snapshotFile.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshotFile.toPath(), StandardCharsets.UTF_8)) {
+                Header header = gson.fromJson(reader.readLine(), Header.class);
+                if (header == null || header.format != FORMAT) {
+                    throw new IOException("Unsupported snapshot format in " + snapshotFile.getName());
+                }
+                snapshotSeq = header.seq;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) apply(builder, gson.fromJson(line, Record.class));
+                }
+            } catch (JsonParseException e) {
+                throw new IOException("Damaged snapshot " + snapshotFile.getName() + ": " + e.getMessage(), e);
+            }
+        }
+        seq = snapshotSeq;
+        journalRecords = 0L;
+        boolean damaged = false;
+        if (journalFile.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    Record record;
+                    try {
+                        record = gson.fromJson(line, Record.class);
+                    } catch (JsonParseException e) {
+                        damaged = true;
+                        break;
+                    }
+                    if (record == null || record.seq == null) continue;
+                    journalRecords++;
+                    if (record.seq <= snapshotSeq) continue;
+                    apply(builder, record);
+                    seq = record.seq;
+                }
+            }
+        }
+        LocationSnapshot loaded = builder.build();
+        logger.info("Loaded " + loaded.getSwitches().size() + " switches from " + snapshotFile.getName() + " and " + journalRecords + " journal records.");
+        if (damaged) {
+            logger.warning("Ignored a damaged record at the end of " + journalFile.getName() + ", writing a new snapshot.");
+            compact(loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public synchronized long save(LocationSnapshot snapshot, Set<String> changedSwitchIds, Set<String> changedGroupIds) throws IOException {
+        if (compactOnNextSave || journalRecords + changedSwitchIds.size() + changedGroupIds.size() > compactAfterRecords) {
+            return compact(snapshot);
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String groupId : changedGroupIds) {
+            Group group = snapshot.getGroup(groupId);
+            appendRecord(lines, group != null ? Record.put(group) : Record.removeGroup(groupId));
+        }
+        for (String switchId : changedSwitchIds) {
+            Switch sw = snapshot.getSwitch(switchId);
+            appendRecord(lines, sw != null ? Record.put(sw) : Record.removeSwitch(switchId));
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (journal == null) journal = new FileOutputStream(journalFile, true);
+            journal.write(bytes);
+            journal.flush();
+        } catch (IOException e) {
+            compactOnNextSave = true;
+            throw e;
+        }
+        journalRecords += changedSwitchIds.size() + changedGroupIds.size();
+        return bytes.length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void appendRecord(StringBuilder lines, Record record) {
+        record.seq = ++seq;
+        lines.append(gson.toJson(record)).append('\n');
+    }
+
+    /**
+     * Hands the data back to the yaml store: writes it to {@code target}, then moves the snapshot
+     * and journal aside as {@code .exported}, so switching to this store again migrates the YAML.
+     */
+    public synchronized LocationSnapshot export(YamlLocationStore target) throws IOException {
+        LocationSnapshot loaded = load();
+        close();
+        target.save(loaded, Collections.<String>emptySet(), Collections.<String>emptySet());
+        for (File file : new File[]{snapshotFile, journalFile}) {
+            if (file.exists()) Files.move(file.toPath(), new File(file.getParentFile(), file.getName() + ".exported").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info("Exported " + loaded.getSwitches().size() + " switches and " + loaded.getGroups().size() + " groups from "
+                + snapshotFile.getName() + " back to " + target.getFile().getName() + " (journal files kept as .exported).");
+        return loaded;
+    }
+
+    private LocationSnapshot migrate() throws IOException {
+        LocationSnapshot loaded = legacy.load();
+        compact(loaded);
+        File migrated = new File(legacy.getFile().getParentFile(), legacy.getFile().getName() + ".migrated");
+        Files.move(legacy.getFile().toPath(), migrated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Migrated " + loaded.getSwitches().size() + " switches and " + loaded.getGroups().size() + " groups from "
+                + legacy.getFile().getName() + " to " + snapshotFile.getName() + " (original kept as " + migrated.getName() + ").");
+        return loaded;
+    }
+
+    private long compact(LocationSnapshot snapshot) throws IOException {
+        File tempFile = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            Header header = new Header();
+            header.format = FORMAT;
+            header.seq = seq;
+            writer.write(gson.toJson(header));
+            writer.write('\n');
+            for (Group group : snapshot.getGroups().values()) {
+                writer.write(gson.toJson(Record.put(group)));
+                writer.write('\n');
+            }
+            for (Switch sw : snapshot.getSwitches().values()) {
+                writer.write(gson.toJson(Record.put(sw)));
+                writer.write('\n');
+            }
+        }
+        try {
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        close();
+        journal = new FileOutputStream(journalFile, false);
+        journalRecords = 0L;
+        compactOnNextSave = false;
+        return snapshotFile.length();
+    }
+
+    private static void apply(LocationSnapshot.Builder builder, Record record) {
+        if (record.sw != null) builder.putSwitch(record.sw);
+        if (record.group != null) builder.putGroup(record.group);
+        if (record.removeSwitch != null) builder.removeSwitch(record.removeSwitch);
+        if (record.removeGroup != null) builder.removeGroup(record.removeGroup);
+    }
+
+    private static final class Header {
+        int format;
+        long seq;
+    }
+
+    private static final class Record {
+        Long seq;
+        @SerializedName("switch")
+        Switch sw;
+        Group group;
+        String removeSwitch;
+        String removeGroup;
+
+        static Record put(Switch sw) {
+            Record record = new Record();
+            record.sw = sw;
+            return record;
+        }
+
+        static Record put(Group group) {
+            Record record = new Record();
+            record.group = group;
+            return record;
+        }
+
+        static Record removeSwitch(String switchId) {
+            Record record = new Record();
+            record.removeSwitch = switchId;
+            return record;
+        }
+
+        static Record removeGroup(String groupId) {
+            Record record = new Record();
+            record.removeGroup = groupId;
+            return record;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.remoteredstone;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Block state of every switch in a loaded chunk, refreshed by a repeating main-thread task that
+ * walks the snapshot's chunks and checks a bounded number of switches per tick. Chunk load and
+ * unload events refresh or drop a single chunk in between. States that are dropped are also
+ * removed from the feed. The first sweep starts once the switch data has loaded. Web threads only read the map and never wait on the server thread.
+ */
+public class LiveStateCache implements Runnable {
+
+    private final LocationManager locationManager;
+    private final LiveStateFeed feed;
+    private final int checksPerTick;
+    private final int sweepIntervalTicks;
+
+    private final Map<String, Boolean> states = new ConcurrentHashMap<>();
+    private volatile long lastSweepMillis;
+
+    private LocationSnapshot sweepSnapshot;
+    private Iterator<SpatialIndex.Chunk> sweep;
+    private int ticksUntilNextSweep;
+
+    public LiveStateCache(LocationManager locationManager, LiveStateFeed feed, int checksPerTick, int sweepIntervalTicks) {
+        this.locationManager = locationManager;
+        this.feed = feed;
+        this.checksPerTick = Math.max(1, checksPerTick);
+        this.sweepIntervalTicks = Math.max(1, sweepIntervalTicks);
+    }
+
+    public Map<String, Boolean> getStates(Collection<String> switchIds) {
+        Map<String, Boolean> result = new HashMap<>();
+        for (String switchId : switchIds) {
+            Boolean isON = states.get(switchId);
+            if (isON != null) result.put(switchId, isON);
+        }
+        return result;
+    }
+
+    public long getLastSweepMillis() {
+        return lastSweepMillis;
+    }
+
+    public void record(String switchId, boolean isON) {
+        Boolean previous = states.put(switchId, isON);
+        if (previous == null || previous != isON) {
+            feed.publish(switchId, isON);
+        }
+    }
+
+    /**
+     * Forgets the states of switches that were deleted or can no longer be read.
+     */
+    public void forget(Collection<String> switchIds) {
+        states.keySet().removeAll(switchIds);
+        feed.remove(switchIds);
+    }
+
+    @Override
+    public void run() {
+        if (!locationManager.isReady()) return;
+        if (sweep == null) {
+            if (--ticksUntilNextSweep > 0) return;
+            sweepSnapshot = locationManager.getSnapshot();
+            sweep = sweepSnapshot.getSpatialIndex().getChunks().iterator();
+        }
+        Map<String, World> worlds = new HashMap<>();
+        int budget = checksPerTick;
+        while (budget > 0 && sweep.hasNext()) {
+            SpatialIndex.Chunk chunk = sweep.next();
+            budget -= refresh(worlds.computeIfAbsent(chunk.getWorld(), Bukkit::getWorld), chunk, sweepSnapshot);
+        }
+        if (!sweep.hasNext()) {
+            Map<String, Switch> current = locationManager.getSnapshot().getSwitches();
+            List<String> deleted = new ArrayList<>();
+            for (String switchId : states.keySet()) {
+                if (!current.containsKey(switchId)) deleted.add(switchId);
+            }
+            if (!deleted.isEmpty()) forget(deleted);
+            sweep = null;
+            sweepSnapshot = null;
+            ticksUntilNextSweep = sweepIntervalTicks;
+            lastSweepMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Reads the blocks of the switches in a chunk that has just been loaded.
+     */
+    public void refreshChunk(World world, int chunkX, int chunkZ) {
+        LocationSnapshot snapshot = locationManager.getSnapshot();
+        SpatialIndex.Chunk chunk = snapshot.getSpatialIndex().getChunk(world.getName(), chunkX, chunkZ);
+        if (chunk != null) refresh(world, chunk, snapshot);
+    }
+
+    public void forgetChunk(String worldName, int chunkX, int chunkZ) {
+        SpatialIndex.Chunk chunk = locationManager.getSnapshot().getSpatialIndex().getChunk(worldName, chunkX, chunkZ);
+        if (chunk != null) forget(chunk.getSwitchIds());
+    }
+
+    private int refresh(World world, SpatialIndex.Chunk chunk, LocationSnapshot snapshot) {
+        List<String> switchIds = chunk.getSwitchIds();
+        if (world == null || !world.isChunkLoaded(chunk.getX(), chunk.getZ())) {
+            forget(switchIds);
+            return 1;
+        }
+        for (String switchId : switchIds) {
+            Switch sw = snapshot.getSwitch(switchId);
+            if (sw != null) record(switchId, world.getBlockAt(sw.getX(), sw.getY(), sw.getZ()).getType() == Material.REDSTONE_BLOCK);
+        }
+        return switchIds.size();
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.remoteredstone;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Versioned feed of switch block state changes. Every real change bumps the version, so a client
+ * can ask for everything after the last version it has seen, including switches whose state is
+ * no longer known. Changes older than the retained window are answered with a full reset of all
+ * known states.
+ */
+public class LiveStateFeed {
+
+    private static final long KEEP_ALIVE_MILLIS = 15000L;
+
+    private final Gson gson = new Gson();
+    private final int capacity;
+    private final int maxStreams;
+    private final String[] ringIds;
+    private final Boolean[] ringStates;
+    private final Map<String, Boolean> knownStates = new HashMap<>();
+    private long version;
+    private int openStreams;
+    private boolean closed;
+
+    public LiveStateFeed(int capacity, int maxStreams) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.capacity = size;
+        this.maxStreams = maxStreams;
+        this.ringIds = new String[size];
+        this.ringStates = new Boolean[size];
+    }
+
+    public synchronized void publish(String switchId, boolean isON) {
+        Boolean previous = knownStates.put(switchId, isON);
+        if (previous != null && previous == isON) return;
+        append(switchId, isON);
+        notifyAll();
+    }
+
+    /**
+     * Drops the states of switches that were deleted or whose chunk was unloaded, so clients stop
+     * showing them and a reset no longer lists them.
+     */
+    public synchronized void remove(Collection<String> switchIds) {
+        boolean changed = false;
+        for (String switchId : switchIds) {
+            if (knownStates.remove(switchId) != null) {
+                append(switchId, null);
+                changed = true;
+            }
+        }
+        if (changed) notifyAll();
+    }
+
+    private void append(String switchId, Boolean isON) {
+        version++;
+        int slot = (int) (version & (capacity - 1));
+        ringIds[slot] = switchId;
+        ringStates[slot] = isON;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized Changes changesSince(long since) {
+        if (since == version) {
+            return new Changes(version, false, new LinkedHashMap<>(), new ArrayList<>());
+        }
+        if (since <= 0 || since > version || since < version - capacity) {
+            return new Changes(version, true, new LinkedHashMap<>(knownStates), new ArrayList<>());
+        }
+        Map<String, Boolean> states = new LinkedHashMap<>();
+        Set<String> removed = new LinkedHashSet<>();
+        for (long v = since + 1; v <= version; v++) {
+            int slot = (int) (v & (capacity - 1));
+            if (ringStates[slot] == null) {
+                states.remove(ringIds[slot]);
+                removed.add(ringIds[slot]);
+            } else {
+                removed.remove(ringIds[slot]);
+                states.put(ringIds[slot], ringStates[slot]);
+            }
+        }
+        return new Changes(version, false, states, new ArrayList<>(removed));
+    }
+
+    public synchronized Changes awaitChangesSince(long since, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!closed && since == version) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) break;
+            wait(remaining);
+        }
+        return changesSince(since);
+    }
+
+    public synchronized InputStream openStream(long since) {
+        if (closed || openStreams >= maxStreams) return null;
+        openStreams++;
+        return new EventStream(since);
+    }
+
+    public synchronized int getOpenStreams() {
+        return openStreams;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private synchronized void releaseStream() {
+        openStreams--;
+    }
+
+    public String toJson(Changes changes) {
+        return gson.toJson(changes);
+    }
+
+    public static final class Changes {
+        private final long version;
+        private final boolean reset;
+        private final Map<String, Boolean> states;
+        private final List<String> removed;
+
+        Changes(long version, boolean reset, Map<String, Boolean> states, List<String> removed) {
+            this.version = version;
+            this.reset = reset;
+            this.states = states;
+            this.removed = removed;
+        }
+
+        public long getVersion() { return version; }
+        public boolean isReset() { return reset; }
+        public Map<String, Boolean> getStates() { return states; }
+        public List<String> getRemoved() { return removed; }
+        public boolean isEmpty() { return !reset && states.isEmpty() && removed.isEmpty(); }
+    }
+
+    private final class EventStream extends InputStream {
+
+        private long lastVersion;
+        private byte[] buffer = new byte[0];
+        private int position;
+        private boolean streamClosed;
+
+        EventStream(long since) {
+            this.lastVersion = since;
+            if (since <= 0) {
+                this.buffer = ("retry: 2000\n\n").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= buffer.length && !fill()) return -1;
+            int count = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            if (streamClosed) return false;
+            Changes changes;
+            try {
+                changes = awaitChangesSince(lastVersion, KEEP_ALIVE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for live state changes", e);
+            }
+            synchronized (LiveStateFeed.this) {
+                if (closed) return false;
+            }
+            String event;
+            if (changes.isEmpty()) {
+                event = ": keep-alive\n\n";
+            } else {
+                lastVersion = changes.getVersion();
+                event = "id: " + changes.getVersion() + "\nevent: states\ndata: " + toJson(changes) + "\n\n";
+            }
+            buffer = event.getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (!streamClosed) {
+                streamClosed = true;
+                releaseStream();
+            }
+        }
+    }
+}
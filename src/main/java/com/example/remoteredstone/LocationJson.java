@@ -0,0 +1,99 @@
+package com.example.remoteredstone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact JSON-ready views of groups and switches for the tree API and mutation responses.
+ */
+public final class LocationJson {
+
+    private LocationJson() {
+    }
+
+    public static Set<String> parseFields(String fields) {
+        if (fields == null || fields.trim().isEmpty()) return null;
+        return new HashSet<>(Arrays.asList(fields.trim().split("\\s*,\\s*")));
+    }
+
+    public static Map<String, Object> toMap(Switch sw, Set<String> fields) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", sw.getId());
+        if (wants(fields, "name")) data.put("name", sw.getName());
+        if (wants(fields, "world")) data.put("world", sw.getWorld());
+        if (wants(fields, "x")) data.put("x", sw.getX());
+        if (wants(fields, "y")) data.put("y", sw.getY());
+        if (wants(fields, "z")) data.put("z", sw.getZ());
+        if (wants(fields, "state")) data.put("state", sw.getState());
+        if (wants(fields, "group")) data.put("group", sw.getGroupId());
+        return data;
+    }
+
+    public static Map<String, Object> toMap(Group group, Set<String> fields) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", group.getId());
+        if (wants(fields, "name")) data.put("name", group.getName());
+        if (wants(fields, "memo")) data.put("memo", group.getMemo());
+        if (wants(fields, "order")) data.put("order", group.getOrder());
+        if (wants(fields, "parent") && group.getParentId() != null) data.put("parent", group.getParentId());
+        return data;
+    }
+
+    /**
+     * Builds the group tree below {@code rootId} (or all top-level groups when it is empty).
+     * {@code depth} limits how many levels of child groups are included, negative meaning unlimited,
+     * and {@code offset}/{@code limit} page the switches listed in every group.
+     */
+    public static Map<String, Object> tree(LocationSnapshot snapshot, String rootId, int depth, int offset, int limit, Set<String> fields) {
+        List<Group> roots;
+        if (rootId == null || rootId.isEmpty()) {
+            roots = snapshot.getTopLevelGroups();
+        } else {
+            Group root = snapshot.getGroup(rootId);
+            roots = root != null ? Collections.singletonList(root) : Collections.<Group>emptyList();
+        }
+        List<Map<String, Object>> groups = new ArrayList<>(roots.size());
+        for (Group group : roots) {
+            groups.add(groupNode(snapshot, group, depth, offset, limit, fields));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", snapshot.getVersion());
+        result.put("groups", groups);
+        return result;
+    }
+
+    private static Map<String, Object> groupNode(LocationSnapshot snapshot, Group group, int depth, int offset, int limit, Set<String> fields) {
+        Map<String, Object> node = toMap(group, fields);
+        List<Switch> switches = snapshot.getSwitchesInGroup(group.getId());
+        node.put("switchCount", switches.size());
+        if (limit > 0 && offset < switches.size()) {
+            List<Switch> page = switches.subList(Math.max(0, offset), Math.min(switches.size(), Math.max(0, offset) + limit));
+            List<Map<String, Object>> items = new ArrayList<>(page.size());
+            for (Switch sw : page) items.add(toMap(sw, fields));
+            node.put("switches", items);
+        }
+        List<Group> children = snapshot.getChildGroups(group.getId());
+        if (!children.isEmpty()) {
+            if (depth == 0) {
+                node.put("childCount", children.size());
+            } else {
+                List<Map<String, Object>> childNodes = new ArrayList<>(children.size());
+                for (Group child : children) {
+                    childNodes.add(groupNode(snapshot, child, depth - 1, offset, limit, fields));
+                }
+                node.put("children", childNodes);
+            }
+        }
+        return node;
+    }
+
+    private static boolean wants(Set<String> fields, String field) {
+        return fields == null || fields.contains(field);
+    }
+}
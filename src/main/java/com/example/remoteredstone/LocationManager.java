@@ -1,142 +1,581 @@
 package com.example.remoteredstone;
 
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
-
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 public class LocationManager {
 
-    private final RemoteRedstone plugin;
-    private File configFile;
-    private FileConfiguration dataConfig;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000L;
+
+    private final LocationStore store;
+    private final Logger logger;
+    private final Metrics.Histogram saveDuration;
+    private final Metrics.Counter savedBytes;
+    private final Metrics.Counter saveFailures;
+    private volatile LocationSnapshot snapshot = LocationSnapshot.EMPTY;
+    private volatile boolean ready;
+    private volatile String loadError;
+    private CompletableFuture<LocationSnapshot> loading;
+    private final SearchIndex searchIndex = new SearchIndex();
+    private volatile Consumer<Collection<String>> switchRemovalListener;
 
+    private final boolean writeBehind;
+    private final long flushDelayMillis;
+    private final long maxFlushDelayMillis;
+    private final ScheduledThreadPoolExecutor saveExecutor;
+    private final Object saveLock = new Object();
+    private final Object writeLock = new Object();
+    private final Set<String> pendingSwitchIds = new LinkedHashSet<>();
+    private final Set<String> pendingGroupIds = new LinkedHashSet<>();
+    private boolean dirty;
+    private long dirtySinceMillis;
+    private int failedSaves;
+    private ScheduledFuture<?> pendingFlush;
+    private long lastIdStamp;
+
+    /**
+     * Opens the store configured for {@code plugin} without reading it; call {@link #loadAsync()}.
+     */
     public LocationManager(RemoteRedstone plugin) {
-        this.plugin = plugin;
-        setup();
+        this(openStore(plugin), plugin.getLogger(), plugin.getMetrics(),
+                !"sync".equalsIgnoreCase(plugin.getConfig().getString("persistence-mode", "write-behind")),
+                plugin.getConfig().getLong("persistence-flush-delay-ms", 500L),
+                plugin.getConfig().getLong("persistence-max-delay-ms", 5000L), false);
     }
 
-    public void setup() {
-        configFile = new File(plugin.getDataFolder(), "locations.yml");
-        if (!configFile.exists()) {
+    public LocationManager(LocationStore store, Logger logger, Metrics metrics, boolean writeBehind, long flushDelayMillis, long maxFlushDelayMillis) {
+        this(store, logger, metrics, writeBehind, flushDelayMillis, maxFlushDelayMillis, true);
+    }
+
+    private LocationManager(LocationStore store, Logger logger, Metrics metrics, boolean writeBehind, long flushDelayMillis, long maxFlushDelayMillis, boolean loadNow) {
+        this.store = store;
+        this.logger = logger;
+        this.saveDuration = metrics.histogram("remoteredstone_save_duration_seconds", "Time to write location data.");
+        this.savedBytes = metrics.counter("remoteredstone_save_bytes_total", "Bytes of location data written.");
+        this.saveFailures = metrics.counter("remoteredstone_save_failures_total", "Failed writes of location data.");
+        metrics.gauge("remoteredstone_switches", "Switches currently registered.", () -> snapshot.getSwitches().size());
+        metrics.gauge("remoteredstone_groups", "Groups currently registered.", () -> snapshot.getGroups().size());
+        this.writeBehind = writeBehind;
+        this.flushDelayMillis = Math.max(0L, flushDelayMillis);
+        this.maxFlushDelayMillis = Math.max(this.flushDelayMillis, maxFlushDelayMillis);
+        this.saveExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "RemoteRedstone-Save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.saveExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.saveExecutor.setRemoveOnCancelPolicy(true);
+        if (loadNow) setup();
+    }
+
+    private static LocationStore openStore(RemoteRedstone plugin) {
+        File yamlFile = new File(plugin.getDataFolder(), "locations.yml");
+        int compactRecords = plugin.getConfig().getInt("journal-compact-records", 20000);
+        if ("journal".equalsIgnoreCase(plugin.getConfig().getString("persistence-store", "yaml"))) {
+            return new JournalLocationStore(plugin.getDataFolder(), plugin.getLogger(), compactRecords, new YamlLocationStore(yamlFile));
+        }
+        if (!yamlFile.exists()) {
+            // After a journal migration locations.yml is gone; the empty default would hide the data.
+            if (JournalLocationStore.exists(plugin.getDataFolder())) {
+                return new YamlLocationStore(yamlFile, new JournalLocationStore(plugin.getDataFolder(), plugin.getLogger(), compactRecords, null));
+            }
             plugin.saveResource("locations.yml", false);
         }
-        dataConfig = YamlConfiguration.loadConfiguration(configFile);
+        return new YamlLocationStore(yamlFile);
     }
 
-    public void saveConfig() {
+    public void setup() {
         try {
-            dataConfig.save(configFile);
+            LocationSnapshot loaded = store.load();
+            searchIndex.rebuild(loaded);
+            synchronized (this) {
+                snapshot = loaded;
+                ready = true;
+            }
         } catch (IOException e) {
-            plugin.getLogger().severe("Could not save locations.yml! " + e.getMessage());
+            loadError = e.getMessage();
+            throw new IllegalStateException("Could not load switch locations: " + e.getMessage(), e);
         }
     }
 
-    public void addGroup(String groupName, String memo, String parentId) {
-        String groupId = "group_" + System.currentTimeMillis();
-        String path = "groups." + groupId;
-        dataConfig.set(path + ".name", groupName);
-        dataConfig.set(path + ".memo", memo);
-        dataConfig.set(path + ".order", System.currentTimeMillis());
-        if (parentId != null && !parentId.isEmpty()) {
-            dataConfig.set(path + ".parent", parentId);
+    /**
+     * Runs {@link #setup()} on a background thread. Until it completes the manager holds an empty
+     * snapshot, {@link #isReady()} is false and every change is refused, so nothing can be saved
+     * over the stored data.
+     */
+    public synchronized CompletableFuture<LocationSnapshot> loadAsync() {
+        if (loading == null) {
+            loading = CompletableFuture.supplyAsync(() -> {
+                setup();
+                return snapshot;
+            }, r -> {
+                Thread thread = new Thread(r, "RemoteRedstone-Load");
+                thread.setDaemon(true);
+                thread.start();
+            });
         }
-        saveConfig();
+        return loading;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Why loading failed, or null while it is running or after it succeeded.
+     */
+    public String getLoadError() {
+        return loadError;
     }
 
-    public void updateGroup(String groupId, String newName, String newMemo) {
-        String path = "groups." + groupId;
-        if (dataConfig.isConfigurationSection(path)) {
-            dataConfig.set(path + ".name", newName);
-            dataConfig.set(path + ".memo", newMemo);
+    public void saveConfig() {
+        flush(true);
+    }
+
+    private void markDirty() {
+        if (!writeBehind) {
             saveConfig();
+            return;
+        }
+        synchronized (saveLock) {
+            long now = System.currentTimeMillis();
+            if (!dirty) {
+                dirty = true;
+                dirtySinceMillis = now;
+            }
+            if (saveExecutor.isShutdown()) return;
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+            }
+            long delay = Math.min(flushDelayMillis, dirtySinceMillis + maxFlushDelayMillis - now);
+            pendingFlush = saveExecutor.schedule(() -> flush(false), Math.max(0L, delay), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(boolean force) {
+        if (!ready) return;
+        synchronized (writeLock) {
+            LocationSnapshot toWrite;
+            long dirtySince;
+            Set<String> switchIds;
+            Set<String> groupIds;
+            synchronized (saveLock) {
+                if (!dirty && !force) return;
+                dirtySince = dirty ? dirtySinceMillis : System.currentTimeMillis();
+                clearDirty();
+                toWrite = snapshot;
+                switchIds = new LinkedHashSet<>(pendingSwitchIds);
+                groupIds = new LinkedHashSet<>(pendingGroupIds);
+                pendingSwitchIds.clear();
+                pendingGroupIds.clear();
+            }
+            long start = System.nanoTime();
+            try {
+                savedBytes.add(store.save(toWrite, switchIds, groupIds));
+                saveDuration.observeNanos(System.nanoTime() - start);
+                synchronized (saveLock) {
+                    failedSaves = 0;
+                }
+            } catch (IOException e) {
+                saveFailures.inc();
+                logger.severe("Could not save switch locations! " + e.getMessage());
+                retryLater(dirtySince, switchIds, groupIds);
+            }
         }
     }
 
-    public void saveGroupOrder(List<String> orderedGroupIds) {
+    /**
+     * Puts the changes of a failed save back and tries again, waiting twice as long after each
+     * failure in a row. The final flush in {@link #shutdown()} picks them up as well.
+     */
+    private void retryLater(long dirtySince, Set<String> switchIds, Set<String> groupIds) {
+        synchronized (saveLock) {
+            pendingSwitchIds.addAll(switchIds);
+            pendingGroupIds.addAll(groupIds);
+            dirtySinceMillis = dirty ? Math.min(dirtySinceMillis, dirtySince) : dirtySince;
+            dirty = true;
+            failedSaves = Math.min(failedSaves + 1, 16);
+            if (saveExecutor.isShutdown()) return;
+            if (pendingFlush != null) pendingFlush.cancel(false);
+            long delay = Math.min(MAX_RETRY_DELAY_MILLIS, Math.max(1000L, flushDelayMillis) << (failedSaves - 1));
+            pendingFlush = saveExecutor.schedule(() -> flush(false), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void clearDirty() {
+        dirty = false;
+        dirtySinceMillis = 0L;
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+    }
+
+    public void shutdown() {
+        CompletableFuture<LocationSnapshot> pending;
+        synchronized (this) {
+            pending = loading;
+        }
+        if (pending != null && !pending.isDone()) {
+            try {
+                pending.get(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // Reported when loading failed; there is nothing to save either way.
+            }
+        }
+        saveExecutor.shutdown();
+        try {
+            saveExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(false);
+        try {
+            store.close();
+        } catch (IOException e) {
+            logger.warning("Could not close the location store: " + e.getMessage());
+        }
+    }
+
+    public LocationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public SearchIndex.Result search(SearchIndex.Query query) {
+        return searchIndex.search(snapshot, query);
+    }
+
+    public synchronized Group addGroup(String groupName, String memo, String parentId) {
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        Group group = addGroup(builder, groupName, memo, parentId);
+        commit(builder);
+        return group;
+    }
+
+    public synchronized Group updateGroup(String groupId, String newName, String newMemo) {
+        if (snapshot.getGroup(groupId) == null) return null;
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        Group group = updateGroup(builder, groupId, newName, newMemo);
+        commit(builder);
+        return group;
+    }
+
+    /**
+     * Stores the order of the groups under one parent. When {@code parentId} is not null (empty
+     * meaning top level), groups in the list that currently sit elsewhere are moved under it.
+     */
+    public synchronized void saveGroupOrder(String parentId, List<String> orderedGroupIds) {
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
         for (int i = 0; i < orderedGroupIds.size(); i++) {
-            String groupId = orderedGroupIds.get(i);
-            String path = "groups." + groupId;
-            if (dataConfig.isConfigurationSection(path)) {
-                dataConfig.set(path + ".order", i);
+            Group group = builder.getGroup(orderedGroupIds.get(i));
+            if (group == null) continue;
+            if (parentId != null) {
+                group = moveGroup(builder, group, parentId);
             }
+            builder.putGroup(group.withOrder(i));
         }
-        saveConfig();
+        commit(builder);
     }
 
-    public void removeGroup(String groupId) {
-        List<String> groupsToDelete = getDescendantGroups(groupId);
-        groupsToDelete.add(groupId);
+    public synchronized Group moveGroup(String groupId, String parentId) {
+        if (snapshot.getGroup(groupId) == null) return null;
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        Group moved = moveGroup(builder, builder.getGroup(groupId), parentId);
+        builder.putGroup(moved);
+        commit(builder);
+        return moved;
+    }
+
+    public synchronized List<Switch> removeGroup(String groupId) {
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        List<Switch> removed = removeGroup(builder, groupId);
+        commit(builder);
+        return removed;
+    }
 
-        getAllLocations().entrySet().stream()
-                .filter(entry -> groupsToDelete.contains(entry.getValue().get("group")))
-                .forEach(entry -> removeLocation(entry.getKey()));
+    public synchronized List<Switch> setGroupState(String groupId, boolean isON) {
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        List<Switch> affected = setGroupState(builder, groupId, isON);
+        commit(builder);
+        return affected;
+    }
+
+    public List<String> getDescendantGroups(String parentId) {
+        return snapshot.getDescendantGroupIds(parentId);
+    }
+
+    public Map<String, Group> getAllGroups() {
+        return snapshot.getGroups();
+    }
+
+    public synchronized Switch addLocation(String name, String world, int x, int y, int z, String groupId) {
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        Switch sw = addLocation(builder, name, world, x, y, z, groupId);
+        commit(builder);
+        return sw;
+    }
+
+    public synchronized Switch updateSwitch(String switchId, String newName) {
+        if (snapshot.getSwitch(switchId) == null) return null;
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        Switch sw = updateSwitch(builder, switchId, newName);
+        commit(builder);
+        return sw;
+    }
+
+    public void updateLocationState(String switchId, boolean isON) {
+        updateLocationStates(Collections.singletonList(switchId), isON);
+    }
+
+    public synchronized void updateLocationStates(Collection<String> switchIds, boolean isON) {
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        for (String switchId : switchIds) {
+            if (builder.hasSwitch(switchId)) {
+                setSwitchState(builder, switchId, isON);
+            }
+        }
+        commit(builder);
+    }
+
+    public synchronized Switch removeLocation(String switchId) {
+        if (snapshot.getSwitch(switchId) == null) return null;
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        Switch removed = removeLocation(builder, switchId);
+        commit(builder);
+        return removed;
+    }
+
+    public Map<String, Switch> getAllLocations() {
+        return snapshot.getSwitches();
+    }
+
+    /**
+     * Applies all operations to one working copy. Nothing is published unless every operation
+     * succeeds, in which case the whole batch becomes a single snapshot and a single save.
+     */
+    public synchronized BatchResult applyBatch(List<BatchOperation> operations) {
+        LocationSnapshot.Builder builder = snapshot.toBuilder();
+        BatchResult result = new BatchResult();
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperation operation = operations.get(i);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("index", i);
+            entry.put("op", operation != null ? operation.getOp() : null);
+            try {
+                if (operation == null || operation.op == null) throw new IllegalArgumentException("Missing op.");
+                applyOperation(builder, operation, entry, result);
+                entry.put("status", "success");
+                result.addResult(entry, true);
+            } catch (IllegalArgumentException e) {
+                entry.put("status", "error");
+                entry.put("message", e.getMessage());
+                result.addResult(entry, false);
+            }
+        }
+        if (result.isSuccess()) {
+            commit(builder);
+        } else {
+            result.reject();
+        }
+        return result;
+    }
+
+    private void applyOperation(LocationSnapshot.Builder builder, BatchOperation op, Map<String, Object> entry, BatchResult result) {
+        switch (op.op) {
+            case "add-group":
+                requireText(op.name, "name");
+                if (op.parentId != null && !op.parentId.isEmpty()) requireGroup(builder, op.parentId);
+                entry.put("group", LocationJson.toMap(addGroup(builder, op.name, op.memo, op.parentId), null));
+                break;
+            case "update-group":
+                requireGroup(builder, op.groupId);
+                requireText(op.name, "name");
+                entry.put("group", LocationJson.toMap(updateGroup(builder, op.groupId, op.name, op.memo), null));
+                break;
+            case "remove-group":
+                requireGroup(builder, op.groupId);
+                entry.put("switchCount", removeGroup(builder, op.groupId).size());
+                entry.put("groupId", op.groupId);
+                break;
+            case "move-group":
+                requireGroup(builder, op.groupId);
+                Group moved = moveGroup(builder, builder.getGroup(op.groupId), op.parentId);
+                builder.putGroup(moved);
+                entry.put("group", LocationJson.toMap(moved, null));
+                break;
+            case "toggle-group":
+                requireGroup(builder, op.groupId);
+                List<Switch> affected = setGroupState(builder, op.groupId, op.isOn());
+                for (Switch sw : affected) result.place(sw);
+                entry.put("switchCount", affected.size());
+                break;
+            case "add-switch":
+                requireText(op.name, "name");
+                requireText(op.world, "world");
+                requireGroup(builder, op.groupId);
+                if (op.x == null || op.y == null || op.z == null) throw new IllegalArgumentException("x, y and z are required.");
+                Switch added = addLocation(builder, op.name, op.world, op.x, op.y, op.z, op.groupId);
+                result.place(added);
+                entry.put("switch", LocationJson.toMap(added, null));
+                break;
+            case "update-switch":
+                requireSwitch(builder, op.switchId);
+                requireText(op.name, "name");
+                entry.put("switch", LocationJson.toMap(updateSwitch(builder, op.switchId, op.name), null));
+                break;
+            case "remove-switch":
+                requireSwitch(builder, op.switchId);
+                result.remove(removeLocation(builder, op.switchId));
+                entry.put("switchId", op.switchId);
+                break;
+            case "toggle-switch":
+                requireSwitch(builder, op.switchId);
+                Switch toggled = setSwitchState(builder, op.switchId, op.isOn());
+                result.place(toggled);
+                entry.put("switch", LocationJson.toMap(toggled, null));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown op '" + op.op + "'.");
+        }
+    }
+
+    private static void requireText(String value, String field) {
+        if (value == null || value.isEmpty()) throw new IllegalArgumentException(field + " is required.");
+    }
+
+    private static void requireGroup(LocationSnapshot.Builder builder, String groupId) {
+        if (groupId == null || !builder.hasGroup(groupId)) throw new IllegalArgumentException("Group '" + groupId + "' not found.");
+    }
+
+    private static void requireSwitch(LocationSnapshot.Builder builder, String switchId) {
+        if (switchId == null || !builder.hasSwitch(switchId)) throw new IllegalArgumentException("Switch '" + switchId + "' not found.");
+    }
+
+    /**
+     * Called with the ids of switches a change removed, after the new snapshot is published.
+     */
+    public void setSwitchRemovalListener(Consumer<Collection<String>> listener) {
+        this.switchRemovalListener = listener;
+    }
+
+    private void commit(LocationSnapshot.Builder builder) {
+        if (!ready) throw new IllegalStateException("Switch data is still loading.");
+        if (builder.getChangedSwitchIds().isEmpty() && builder.getChangedGroupIds().isEmpty()) return;
+        LocationSnapshot next = builder.build();
+        searchIndex.update(next, builder.getChangedSwitchIds(), builder.getChangedGroupIds());
+        synchronized (saveLock) {
+            snapshot = next;
+            pendingSwitchIds.addAll(builder.getChangedSwitchIds());
+            pendingGroupIds.addAll(builder.getChangedGroupIds());
+        }
+        markDirty();
+        Consumer<Collection<String>> listener = switchRemovalListener;
+        if (listener == null) return;
+        List<String> removed = new ArrayList<>();
+        for (String switchId : builder.getChangedSwitchIds()) {
+            if (!next.getSwitches().containsKey(switchId)) removed.add(switchId);
+        }
+        if (!removed.isEmpty()) listener.accept(removed);
+    }
+
+    private String nextId(String prefix, LocationSnapshot.Builder builder) {
+        long stamp = Math.max(System.currentTimeMillis(), lastIdStamp + 1);
+        while (builder.hasSwitch(prefix + stamp) || builder.hasGroup(prefix + stamp)) stamp++;
+        lastIdStamp = stamp;
+        return prefix + stamp;
+    }
+
+    private Group addGroup(LocationSnapshot.Builder builder, String groupName, String memo, String parentId) {
+        Group group = new Group(nextId("group_", builder), groupName, memo, System.currentTimeMillis(), parentId);
+        builder.putGroup(group);
+        return group;
+    }
+
+    private static Group updateGroup(LocationSnapshot.Builder builder, String groupId, String newName, String newMemo) {
+        Group updated = builder.getGroup(groupId).withDetails(newName, newMemo);
+        builder.putGroup(updated);
+        return updated;
+    }
+
+    private static Group moveGroup(LocationSnapshot.Builder builder, Group group, String parentId) {
+        String newParentId = parentId == null || parentId.isEmpty() ? null : parentId;
+        if (Objects.equals(group.getParentId(), newParentId)) return group;
+        if (newParentId != null) {
+            if (!builder.hasGroup(newParentId)) throw new IllegalArgumentException("Group '" + newParentId + "' not found.");
+            if (builder.isInSubtree(newParentId, group.getId())) {
+                throw new IllegalArgumentException("A group cannot be moved into itself or one of its sub-groups.");
+            }
+        }
+        long order = 0L;
+        for (String siblingId : builder.getChildGroupIds(newParentId)) order = Math.max(order, builder.getGroup(siblingId).getOrder() + 1);
+        return group.withParent(newParentId).withOrder(order);
+    }
 
+    private static List<Switch> removeGroup(LocationSnapshot.Builder builder, String groupId) {
+        List<String> groupsToDelete = builder.getDescendantGroupIds(groupId);
+        groupsToDelete.add(groupId);
+        List<Switch> removed = new ArrayList<>();
         for (String id : groupsToDelete) {
-            dataConfig.set("groups." + id, null);
-        }
-        saveConfig();
-    }
-
-    private List<String> getDescendantGroups(String parentId) {
-        return getAllGroups().entrySet().stream()
-                .filter(entry -> parentId.equals(entry.getValue().get("parent")))
-                .flatMap(entry -> {
-                    List<String> descendants = getDescendantGroups(entry.getKey());
-                    descendants.add(entry.getKey());
-                    return descendants.stream();
-                })
-                .collect(Collectors.toList());
-    }
-
-    public Map<String, Map<String, Object>> getAllGroups() {
-        ConfigurationSection section = dataConfig.getConfigurationSection("groups");
-        if (section == null) return Collections.emptyMap();
-        return section.getKeys(false).stream()
-                .collect(Collectors.toMap(key -> key, key -> section.getConfigurationSection(key).getValues(false)));
-    }
-
-    public void addLocation(String name, String world, int x, int y, int z, String groupId) {
-        String switchId = "switch_" + System.currentTimeMillis();
-        String path = "locations." + switchId;
-        dataConfig.set(path + ".name", name);
-        dataConfig.set(path + ".world", world);
-        dataConfig.set(path + ".x", x);
-        dataConfig.set(path + ".y", y);
-        dataConfig.set(path + ".z", z);
-        dataConfig.set(path + ".state", "OFF");
-        dataConfig.set(path + ".group", groupId);
-        saveConfig();
-    }
-
-    public void updateSwitch(String switchId, String newName) {
-        String path = "locations." + switchId;
-        if (dataConfig.isConfigurationSection(path)) {
-            dataConfig.set(path + ".name", newName);
-            saveConfig();
+            for (String switchId : builder.getSwitchIdsInGroup(id)) {
+                removed.add(builder.getSwitch(switchId));
+            }
         }
+        for (Switch sw : removed) builder.removeSwitch(sw.getId());
+        for (String id : groupsToDelete) builder.removeGroup(id);
+        return removed;
+    }
+
+    private static List<Switch> setGroupState(LocationSnapshot.Builder builder, String groupId, boolean isON) {
+        List<String> groupsToAffect = builder.getDescendantGroupIds(groupId);
+        groupsToAffect.add(groupId);
+        List<String> switchIds = new ArrayList<>();
+        for (String id : groupsToAffect) switchIds.addAll(builder.getSwitchIdsInGroup(id));
+        List<Switch> affected = new ArrayList<>(switchIds.size());
+        for (String switchId : switchIds) affected.add(setSwitchState(builder, switchId, isON));
+        return affected;
+    }
+
+    private Switch addLocation(LocationSnapshot.Builder builder, String name, String world, int x, int y, int z, String groupId) {
+        Switch sw = new Switch(nextId("switch_", builder), name, world, x, y, z, false, groupId);
+        builder.putSwitch(sw);
+        return sw;
     }
 
-    public void updateLocationState(String switchId, String state) {
-        dataConfig.set("locations." + switchId + ".state", state);
-        saveConfig();
+    private static Switch updateSwitch(LocationSnapshot.Builder builder, String switchId, String newName) {
+        Switch updated = builder.getSwitch(switchId).withName(newName);
+        builder.putSwitch(updated);
+        return updated;
     }
 
-    public void removeLocation(String switchId) {
-        dataConfig.set("locations." + switchId, null);
-        saveConfig();
+    private static Switch setSwitchState(LocationSnapshot.Builder builder, String switchId, boolean isON) {
+        Switch sw = builder.getSwitch(switchId);
+        Switch updated = sw.withState(isON);
+        if (updated != sw) builder.putSwitch(updated);
+        return updated;
     }
 
-    public Map<String, Map<String, Object>> getAllLocations() {
-        ConfigurationSection section = dataConfig.getConfigurationSection("locations");
-        if (section == null) return Collections.emptyMap();
-        return section.getKeys(false).stream()
-                .collect(Collectors.toMap(key -> key, key -> section.getConfigurationSection(key).getValues(false)));
+    private static Switch removeLocation(LocationSnapshot.Builder builder, String switchId) {
+        Switch sw = builder.getSwitch(switchId);
+        builder.removeSwitch(switchId);
+        return sw;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,452 @@
+package com.example.remoteredstone;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable view of all groups and switches. A new instance is published by {@link LocationManager}
+ * after every mutation, so readers on any thread can use one without locking. Everything is kept in
+ * {@link PersistentMap}s shared with the previous snapshot, so toggling one switch or moving one
+ * group does not copy the others.
+ */
+public final class LocationSnapshot {
+
+    static final LocationSnapshot EMPTY = new Builder(null).build();
+
+    private static final String ROOT = "";
+
+    private final PersistentMap<String, Switch> switches;
+    private final PersistentMap<String, Group> groups;
+    private final PersistentMap<String, List<String>> switchIdsByGroup;
+    private final PersistentMap<String, List<String>> childGroupIdsByParent;
+    private final PersistentMap<String, String[]> groupPaths;
+    private final SpatialIndex spatialIndex;
+    private final long version;
+    private final PersistentMap<String, Long> groupRevisions;
+
+    private LocationSnapshot(long version, PersistentMap<String, Switch> switches, PersistentMap<String, Group> groups,
+                             PersistentMap<String, List<String>> switchIdsByGroup,
+                             PersistentMap<String, List<String>> childGroupIdsByParent,
+                             PersistentMap<String, String[]> groupPaths, SpatialIndex spatialIndex,
+                             PersistentMap<String, Long> groupRevisions) {
+        this.version = version;
+        this.groupRevisions = groupRevisions;
+        this.switches = switches;
+        this.groups = groups;
+        this.switchIdsByGroup = switchIdsByGroup;
+        this.childGroupIdsByParent = childGroupIdsByParent;
+        this.groupPaths = groupPaths;
+        this.spatialIndex = spatialIndex;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Version of the last snapshot that changed this group or one of its switches.
+     */
+    public long getGroupRevision(String groupId) {
+        Long revision = groupRevisions.get(groupId);
+        return revision != null ? revision : 0L;
+    }
+
+    public Map<String, Switch> getSwitches() {
+        return switches;
+    }
+
+    public Map<String, Group> getGroups() {
+        return groups;
+    }
+
+    public Switch getSwitch(String switchId) {
+        return switches.get(switchId);
+    }
+
+    public Group getGroup(String groupId) {
+        return groups.get(groupId);
+    }
+
+    public Switch getSwitchAt(String world, int x, int y, int z) {
+        String id = spatialIndex.getSwitchIdAt(world, x, y, z);
+        return id != null ? switches.get(id) : null;
+    }
+
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Switches whose x and z lie in the rectangle, bounds inclusive, found through the chunks it
+     * overlaps.
+     */
+    public List<Switch> getSwitchesInRegion(String world, int minX, int minZ, int maxX, int maxZ) {
+        List<Switch> result = new ArrayList<>();
+        for (SpatialIndex.Chunk chunk : spatialIndex.getChunksInRegion(world, minX, minZ, maxX, maxZ)) {
+            for (String id : chunk.getSwitchIds()) {
+                Switch sw = switches.get(id);
+                if (sw != null && sw.getX() >= minX && sw.getX() <= maxX && sw.getZ() >= minZ && sw.getZ() <= maxZ) result.add(sw);
+            }
+        }
+        return result;
+    }
+
+    public List<Switch> getSwitchesInGroup(String groupId) {
+        List<String> ids = switchIdsByGroup.get(groupId);
+        if (ids == null) return Collections.emptyList();
+        List<Switch> result = new ArrayList<>(ids.size());
+        for (String id : ids) result.add(switches.get(id));
+        return result;
+    }
+
+    public List<Group> getTopLevelGroups() {
+        return getChildGroups(ROOT);
+    }
+
+    public List<Group> getChildGroups(String parentId) {
+        List<String> ids = childGroupIdsByParent.get(parentId);
+        if (ids == null) return Collections.emptyList();
+        List<Group> result = new ArrayList<>(ids.size());
+        for (String id : ids) result.add(groups.get(id));
+        return result;
+    }
+
+    /**
+     * All groups below {@code groupId}, parents before their children, found by walking the
+     * child lists of that subtree only.
+     */
+    public List<String> getDescendantGroupIds(String groupId) {
+        List<String> result = new ArrayList<>();
+        if (groups.containsKey(groupId)) collectDescendants(groupId, childGroupIdsByParent::get, result);
+        return result;
+    }
+
+    /**
+     * Every group keeps the ids on its path from the top, so this is one array lookup.
+     */
+    public boolean isInSubtree(String groupId, String rootId) {
+        return isInSubtree(groupPaths.get(groupId), groupPaths.get(rootId), rootId);
+    }
+
+    /**
+     * Ids of the switches in {@code groupId} and all of its descendants.
+     */
+    public List<String> getSwitchIdsInSubtree(String groupId) {
+        List<String> result = new ArrayList<>();
+        if (!groups.containsKey(groupId)) return result;
+        List<String> subtree = getDescendantGroupIds(groupId);
+        subtree.add(0, groupId);
+        for (String id : subtree) {
+            List<String> ids = switchIdsByGroup.get(id);
+            if (ids != null) result.addAll(ids);
+        }
+        return result;
+    }
+
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    private static boolean isInSubtree(String[] path, String[] rootPath, String rootId) {
+        return path != null && rootPath != null && path.length >= rootPath.length && rootId.equals(path[rootPath.length - 1]);
+    }
+
+    /**
+     * Appends the groups below {@code groupId} to {@code result} depth-first. A group already
+     * listed is not entered again, so a parent cycle in stored data cannot loop forever.
+     */
+    private static void collectDescendants(String groupId, Function<String, List<String>> children, List<String> result) {
+        Set<String> seen = new HashSet<>();
+        seen.add(groupId);
+        Deque<String> stack = new ArrayDeque<>();
+        pushChildren(children.apply(groupId), stack);
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!seen.add(id)) continue;
+            result.add(id);
+            pushChildren(children.apply(id), stack);
+        }
+    }
+
+    private static void pushChildren(List<String> ids, Deque<String> stack) {
+        if (ids == null) return;
+        for (int i = ids.size() - 1; i >= 0; i--) stack.push(ids.get(i));
+    }
+
+    static final class Builder {
+
+        private final LocationSnapshot base;
+        private PersistentMap.Editor<String, Switch> switches;
+        private PersistentMap.Editor<String, Group> groups;
+        private PersistentMap.Editor<String, List<String>> switchIdsByGroup;
+        private final Set<String> copiedMemberLists = new HashSet<>();
+        private PersistentMap.Editor<String, List<String>> childGroupIds;
+        private final Set<String> copiedChildLists = new HashSet<>();
+        private PersistentMap.Editor<String, String[]> groupPaths;
+        private SpatialIndex.Editor spatialIndex;
+        private final Set<String> touchedGroups = new HashSet<>();
+        private final Set<String> changedSwitchIds = new LinkedHashSet<>();
+        private final Set<String> changedGroupIds = new LinkedHashSet<>();
+
+        Builder(LocationSnapshot base) {
+            this.base = base;
+            if (base == null) {
+                switches = PersistentMap.<String, Switch>empty().edit();
+                groups = PersistentMap.<String, Group>empty().edit();
+                switchIdsByGroup = PersistentMap.<String, List<String>>empty().edit();
+                childGroupIds = PersistentMap.<String, List<String>>empty().edit();
+                groupPaths = PersistentMap.<String, String[]>empty().edit();
+                spatialIndex = SpatialIndex.EMPTY.edit();
+            }
+        }
+
+        Switch getSwitch(String switchId) {
+            return switches != null ? switches.get(switchId) : base.switches.get(switchId);
+        }
+
+        Group getGroup(String groupId) {
+            return groups != null ? groups.get(groupId) : base.groups.get(groupId);
+        }
+
+        boolean hasSwitch(String switchId) {
+            return getSwitch(switchId) != null;
+        }
+
+        boolean hasGroup(String groupId) {
+            return getGroup(groupId) != null;
+        }
+
+        List<String> getSwitchIdsInGroup(String groupId) {
+            List<String> ids = switchIdsByGroup != null ? switchIdsByGroup.get(groupId) : base.switchIdsByGroup.get(groupId);
+            return ids != null ? new ArrayList<>(ids) : new ArrayList<>();
+        }
+
+        boolean isInSubtree(String groupId, String rootId) {
+            return LocationSnapshot.isInSubtree(pathOf(groupId), pathOf(rootId), rootId);
+        }
+
+        List<String> getChildGroupIds(String parentId) {
+            List<String> ids = childIds(parentId != null ? parentId : ROOT);
+            return ids != null ? Collections.unmodifiableList(ids) : Collections.<String>emptyList();
+        }
+
+        List<String> getDescendantGroupIds(String groupId) {
+            List<String> result = new ArrayList<>();
+            if (hasGroup(groupId)) collectDescendants(groupId, this::childIds, result);
+            return result;
+        }
+
+        PersistentMap.Editor<String, Switch> switches() {
+            if (switches == null) switches = base.switches.edit();
+            return switches;
+        }
+
+        PersistentMap.Editor<String, Group> groups() {
+            if (groups == null) groups = base.groups.edit();
+            return groups;
+        }
+
+        void putSwitch(Switch sw) {
+            Switch previous = switches().put(sw.getId(), sw);
+            touchedGroups.add(sw.getGroupId());
+            changedSwitchIds.add(sw.getId());
+            if (previous == null) {
+                addMember(sw);
+                spatialIndex().add(sw);
+                return;
+            }
+            if (!Objects.equals(previous.getGroupId(), sw.getGroupId())) {
+                touchedGroups.add(previous.getGroupId());
+                removeMember(previous);
+                addMember(sw);
+            }
+            if (!previous.getWorld().equals(sw.getWorld()) || previous.getX() != sw.getX() || previous.getY() != sw.getY() || previous.getZ() != sw.getZ()) {
+                spatialIndex().remove(previous);
+                spatialIndex().add(sw);
+            }
+        }
+
+        void removeSwitch(String switchId) {
+            Switch previous = switches().remove(switchId);
+            if (previous != null) {
+                removeMember(previous);
+                spatialIndex().remove(previous);
+                touchedGroups.add(previous.getGroupId());
+                changedSwitchIds.add(switchId);
+            }
+        }
+
+        /**
+         * Adds or replaces a group. Only the lists of its old and new parent are touched, and
+         * paths are rewritten for the moved subtree alone.
+         */
+        void putGroup(Group group) {
+            Group previous = groups().put(group.getId(), group);
+            touchedGroups.add(group.getId());
+            changedGroupIds.add(group.getId());
+            if (previous == null) {
+                insertChild(group);
+                updatePaths(group);
+            } else if (!Objects.equals(previous.getParentId(), group.getParentId())) {
+                childList(parentKey(previous)).remove(group.getId());
+                insertChild(group);
+                updatePaths(group);
+            } else if (previous.getOrder() != group.getOrder()) {
+                childList(parentKey(group)).remove(group.getId());
+                insertChild(group);
+            }
+        }
+
+        void removeGroup(String groupId) {
+            Group previous = groups().remove(groupId);
+            if (previous != null) {
+                childList(parentKey(previous)).remove(groupId);
+                paths().remove(groupId);
+                touchedGroups.add(groupId);
+                changedGroupIds.add(groupId);
+            }
+        }
+
+        Set<String> getChangedSwitchIds() {
+            return changedSwitchIds;
+        }
+
+        Set<String> getChangedGroupIds() {
+            return changedGroupIds;
+        }
+
+        private void addMember(Switch sw) {
+            if (sw.getGroupId() != null) memberList(sw.getGroupId()).add(sw.getId());
+        }
+
+        private void removeMember(Switch sw) {
+            if (sw.getGroupId() != null) memberList(sw.getGroupId()).remove(sw.getId());
+        }
+
+        private SpatialIndex.Editor spatialIndex() {
+            if (spatialIndex == null) spatialIndex = base.spatialIndex.edit();
+            return spatialIndex;
+        }
+
+        private List<String> memberList(String groupId) {
+            if (switchIdsByGroup == null) switchIdsByGroup = base.switchIdsByGroup.edit();
+            return copyOnce(switchIdsByGroup, copiedMemberLists, groupId);
+        }
+
+        private List<String> childIds(String parentKey) {
+            return childGroupIds != null ? childGroupIds.get(parentKey) : base.childGroupIdsByParent.get(parentKey);
+        }
+
+        private List<String> childList(String parentKey) {
+            if (childGroupIds == null) childGroupIds = base.childGroupIdsByParent.edit();
+            return copyOnce(childGroupIds, copiedChildLists, parentKey);
+        }
+
+        /**
+         * Inserts the group among its siblings, after those with the same or a lower order.
+         */
+        private void insertChild(Group group) {
+            List<String> siblings = childList(parentKey(group));
+            int index = siblings.size();
+            while (index > 0 && getGroup(siblings.get(index - 1)).getOrder() > group.getOrder()) index--;
+            siblings.add(index, group.getId());
+        }
+
+        private PersistentMap.Editor<String, String[]> paths() {
+            if (groupPaths == null) groupPaths = base.groupPaths.edit();
+            return groupPaths;
+        }
+
+        private String[] pathOf(String groupId) {
+            return groupPaths != null ? groupPaths.get(groupId) : base.groupPaths.get(groupId);
+        }
+
+        /**
+         * Rewrites the path of {@code group} and of every group below it. A group whose parent is
+         * missing starts a path of its own, and a group already on the path is skipped.
+         */
+        private void updatePaths(Group group) {
+            String[] parentPath = group.getParentId() != null ? pathOf(group.getParentId()) : null;
+            if (parentPath != null && Arrays.asList(parentPath).contains(group.getId())) parentPath = null;
+            paths().put(group.getId(), extend(parentPath, group.getId()));
+            Deque<String> queue = new ArrayDeque<>();
+            queue.add(group.getId());
+            while (!queue.isEmpty()) {
+                String parentId = queue.poll();
+                List<String> children = childIds(parentId);
+                if (children == null) continue;
+                String[] path = pathOf(parentId);
+                for (String childId : children) {
+                    if (Arrays.asList(path).contains(childId)) continue;
+                    paths().put(childId, extend(path, childId));
+                    queue.add(childId);
+                }
+            }
+        }
+
+        LocationSnapshot build() {
+            PersistentMap<String, Switch> finalSwitches = switches != null ? switches.build() : base.switches;
+            PersistentMap<String, Group> finalGroups = groups != null ? groups.build() : base.groups;
+            PersistentMap<String, List<String>> byGroup = switchIdsByGroup != null ? freeze(switchIdsByGroup, copiedMemberLists) : base.switchIdsByGroup;
+            PersistentMap<String, List<String>> byParent = childGroupIds != null ? freeze(childGroupIds, copiedChildLists) : base.childGroupIdsByParent;
+            PersistentMap<String, String[]> paths = groupPaths != null ? groupPaths.build() : base.groupPaths;
+            SpatialIndex spatial = spatialIndex != null ? spatialIndex.build() : base.spatialIndex;
+            long version = base != null ? base.version + 1 : 0L;
+            PersistentMap<String, Long> revisions = base != null ? base.groupRevisions : PersistentMap.<String, Long>empty();
+            touchedGroups.remove(null);
+            if (!touchedGroups.isEmpty()) {
+                PersistentMap.Editor<String, Long> updated = revisions.edit();
+                for (String groupId : touchedGroups) {
+                    if (finalGroups.containsKey(groupId)) updated.put(groupId, version);
+                    else updated.remove(groupId);
+                }
+                revisions = updated.build();
+            }
+            return new LocationSnapshot(version, finalSwitches, finalGroups, byGroup, byParent, paths, spatial, revisions);
+        }
+
+        /**
+         * The list under {@code key}, copied the first time this builder changes it so the
+         * snapshot it started from keeps its own.
+         */
+        private static List<String> copyOnce(PersistentMap.Editor<String, List<String>> lists, Set<String> copied, String key) {
+            if (copied.add(key)) {
+                List<String> current = lists.get(key);
+                List<String> copy = current != null ? new ArrayList<>(current) : new ArrayList<>();
+                lists.put(key, copy);
+                return copy;
+            }
+            return lists.get(key);
+        }
+
+        private static PersistentMap<String, List<String>> freeze(PersistentMap.Editor<String, List<String>> lists, Set<String> copied) {
+            for (String key : copied) {
+                List<String> ids = lists.get(key);
+                if (ids.isEmpty()) lists.remove(key);
+                else lists.put(key, Collections.unmodifiableList(ids));
+            }
+            return lists.build();
+        }
+
+        private static String parentKey(Group group) {
+            return group.getParentId() != null ? group.getParentId() : ROOT;
+        }
+
+        private static String[] extend(String[] path, String groupId) {
+            if (path == null) return new String[]{groupId};
+            String[] extended = Arrays.copyOf(path, path.length + 1);
+            extended[path.length] = groupId;
+            return extended;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.remoteredstone;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Where {@link LocationManager} keeps its data. {@link #save} always receives the full snapshot
+ * together with the ids of the switches and groups changed since the previous save, so a store
+ * can either rewrite everything or only record the changes.
+ */
+public interface LocationStore {
+
+    LocationSnapshot load() throws IOException;
+
+    /**
+     * Persists {@code snapshot}. Changed ids that are missing from the snapshot were removed.
+     *
+     * @return the number of bytes written
+     */
+    long save(LocationSnapshot snapshot, Set<String> changedSwitchIds, Set<String> changedGroupIds) throws IOException;
+
+    default void close() throws IOException {
+    }
+}
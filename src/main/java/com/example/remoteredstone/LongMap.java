@@ -0,0 +1,125 @@
+package com.example.remoteredstone;
+
+import java.util.Objects;
+
+/**
+ * Hash map from primitive {@code long} keys to objects, used for packed block and chunk
+ * coordinates so lookups never box a key. Open addressing with linear probing and
+ * backward-shift deletion; null values are not allowed. Not thread-safe: instances that are
+ * shared are treated as read-only and copied before a change.
+ */
+final class LongMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    LongMap() {
+        this(8);
+    }
+
+    LongMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity * 3 < expectedSize * 4) capacity <<= 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private LongMap(LongMap<V> other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        mask = other.mask;
+        size = other.size;
+    }
+
+    LongMap<V> copy() {
+        return new LongMap<>(this);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null) return null;
+            if (keys[i] == key) return (V) value;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        Objects.requireNonNull(value);
+        if ((size + 1) * 4 > values.length * 3) resize(values.length << 1);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (values[i] == null) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return null;
+            }
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int gap = slot(key);
+        while (true) {
+            if (values[gap] == null) return null;
+            if (keys[gap] == key) break;
+            gap = (gap + 1) & mask;
+        }
+        V previous = (V) values[gap];
+        for (int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            // Move the entry back into the gap unless its home slot lies between the gap and i.
+            if (((i - slot(keys[i])) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Visitor<V> visitor) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) visitor.visit(keys[i], (V) values[i]);
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = slot(oldKeys[i]);
+            while (values[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    interface Visitor<V> {
+        void visit(long key, V value);
+    }
+}
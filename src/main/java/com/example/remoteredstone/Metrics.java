@@ -0,0 +1,227 @@
+package com.example.remoteredstone;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters, latency histograms and gauges exposed in the Prometheus text format. Recording only
+ * touches {@link LongAdder}s, so it is cheap enough to leave on under load; labelled series are
+ * created on first use and then looked up without locking.
+ */
+public class Metrics {
+
+    private static final double[] SECONDS_BUCKETS = {0.0001, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+    private static final int MAX_SERIES_PER_FAMILY = 128;
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+    private long lastServerTickNanos;
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").series(labels, Counter::new);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").series(labels, Histogram::new);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        family(name, help, "gauge").series(new String[0], () -> new Gauge(value));
+    }
+
+    /**
+     * Wraps a repeating main-thread task so that the time it takes each tick is recorded under
+     * {@code remoteredstone_tick_task_duration_seconds{task=...}}.
+     */
+    public Runnable timed(String task, Runnable runnable) {
+        Histogram histogram = histogram("remoteredstone_tick_task_duration_seconds", "Main-thread time spent in a plugin task per tick.", "task", task);
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                runnable.run();
+            } finally {
+                histogram.observeNanos(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Runs every tick. The interval between two calls is the server tick time, so a slow tick
+     * that does not show up in the plugin's own task durations was caused by something else.
+     */
+    public Runnable serverTickMonitor() {
+        Histogram histogram = histogram("remoteredstone_server_tick_interval_seconds", "Time between two consecutive server ticks.");
+        return () -> {
+            long now = System.nanoTime();
+            if (lastServerTickNanos != 0L) {
+                histogram.observeNanos(now - lastServerTickNanos);
+            }
+            lastServerTickNanos = now;
+        };
+    }
+
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : new TreeMap<>(families).values()) {
+            family.write(out);
+        }
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length == 0) return "";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') sb.append('\\').append(c);
+                else if (c == '\n') sb.append("\\n");
+                else sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.isNaN(value) || Double.isInfinite(value) ? Double.toString(value) : BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private interface Series {
+        void write(StringBuilder out, String name, String labels);
+    }
+
+    private interface SeriesFactory {
+        Series create();
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        Series series(String[] labels, SeriesFactory factory) {
+            String key = labelString(labels);
+            Series existing = series.get(key);
+            if (existing != null) return existing;
+            if (series.size() >= MAX_SERIES_PER_FAMILY) {
+                key = labelString(overflowLabels(labels));
+            }
+            return series.computeIfAbsent(key, k -> factory.create());
+        }
+
+        private static String[] overflowLabels(String[] labels) {
+            String[] overflow = labels.clone();
+            for (int i = 1; i < overflow.length; i += 2) overflow[i] = "other";
+            return overflow;
+        }
+
+        void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            for (Map.Entry<String, Series> entry : new TreeMap<>(series).entrySet()) {
+                entry.getValue().write(out, name, entry.getKey());
+            }
+        }
+    }
+
+    public static final class Counter implements Series {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            out.append(name);
+            if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+            out.append(' ').append(value.sum()).append('\n');
+        }
+    }
+
+    public static final class Histogram implements Series {
+        private final LongAdder[] buckets = new LongAdder[SECONDS_BUCKETS.length];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        public void observeNanos(long nanos) {
+            double seconds = nanos / 1e9;
+            for (int i = 0; i < SECONDS_BUCKETS.length; i++) {
+                if (seconds <= SECONDS_BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0L;
+            for (int i = 0; i < SECONDS_BUCKETS.length; i++) {
+                cumulative += buckets[i].sum();
+                out.append(name).append("_bucket{").append(prefix).append("le=\"").append(formatDouble(SECONDS_BUCKETS[i])).append("\"} ").append(cumulative).append('\n');
+            }
+            long total = count.sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(Math.max(total, cumulative)).append('\n');
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.append(name).append("_sum").append(suffix).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+            out.append(name).append("_count").append(suffix).append(' ').append(total).append('\n');
+        }
+    }
+
+    private static final class Gauge implements Series {
+        private final DoubleSupplier value;
+
+        Gauge(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            out.append(name);
+            if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+            out.append(' ').append(formatDouble(value.getAsDouble())).append('\n');
+        }
+    }
+}
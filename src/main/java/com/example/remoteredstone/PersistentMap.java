@@ -0,0 +1,345 @@
+package com.example.remoteredstone;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable map that shares its structure with the map it was edited from. Values sit in a hash
+ * array mapped trie, so replacing one copies only the handful of nodes on its path instead of the
+ * whole map. Iteration follows insertion order, kept as a list of keys that is only copied when
+ * keys are added or removed. Null keys are not supported.
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Node EMPTY_NODE = new Node(null, 0, new Object[0]);
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<>(EMPTY_NODE, 0, Collections.emptyList());
+
+    private final Node root;
+    private final int size;
+    private final List<K> order;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentMap(Node root, int size, List<K> order) {
+        this.root = root;
+        this.size = size;
+        this.order = order;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    Editor<K, V> edit() {
+        return new Editor<>(this);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(root, key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = find(root, key);
+        return leaf != null ? (V) leaf.value : null;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    Iterator<K> keys = order.iterator();
+                    return new Iterator<Map.Entry<K, V>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return keys.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+                            if (!keys.hasNext()) throw new NoSuchElementException();
+                            K key = keys.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(key, get(key));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Working copy of a map. Nodes it creates are changed in place by later edits; everything
+     * else is copied on the way down, so the map it started from never changes. After
+     * {@link #build()} further edits copy again, leaving the built map untouched as well.
+     */
+    static final class Editor<K, V> {
+
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+        private List<K> order;
+        private final List<K> addedKeys = new ArrayList<>();
+        private final Set<Object> removedKeys = new HashSet<>();
+
+        private Editor(PersistentMap<K, V> base) {
+            this.root = base.root;
+            this.size = base.size;
+            this.order = base.order;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(Object key) {
+            Leaf leaf = find(root, key);
+            return leaf != null ? (V) leaf.value : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(K key, V value) {
+            Leaf[] previous = new Leaf[1];
+            root = (Node) assoc(owner, root, 0, hash(key), key, value, previous);
+            if (previous[0] != null) return (V) previous[0].value;
+            size++;
+            if (!removedKeys.remove(key)) addedKeys.add(key);
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(Object key) {
+            if (key == null) return null;
+            Leaf[] previous = new Leaf[1];
+            Object updated = dissoc(owner, root, 0, hash(key), key, previous);
+            if (previous[0] == null) return null;
+            root = updated != null ? (Node) updated : EMPTY_NODE;
+            size--;
+            removedKeys.add(key);
+            return (V) previous[0].value;
+        }
+
+        PersistentMap<K, V> build() {
+            owner = new Object();
+            if (!addedKeys.isEmpty() || !removedKeys.isEmpty()) {
+                List<K> keys = new ArrayList<>(size);
+                for (K key : order) {
+                    if (!removedKeys.contains(key)) keys.add(key);
+                }
+                for (K key : addedKeys) {
+                    if (!removedKeys.contains(key)) keys.add(key);
+                }
+                order = Collections.unmodifiableList(keys);
+                addedKeys.clear();
+                removedKeys.clear();
+            }
+            return new PersistentMap<>(root, size, order);
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Leaf find(Node root, Object key) {
+        if (key == null) return null;
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+            }
+            if (node instanceof Collision) {
+                Collision collision = (Collision) node;
+                if (collision.hash != hash) return null;
+                for (Leaf leaf : collision.leaves) {
+                    if (leaf.key.equals(key)) return leaf;
+                }
+                return null;
+            }
+            Node branch = (Node) node;
+            int bit = bit(hash, shift);
+            if ((branch.bitmap & bit) == 0) return null;
+            node = branch.slots[Integer.bitCount(branch.bitmap & (bit - 1))];
+        }
+    }
+
+    private static Object assoc(Object owner, Object node, int shift, int hash, Object key, Object value, Leaf[] previous) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            if (leaf.hash == hash && leaf.key.equals(key)) {
+                previous[0] = leaf;
+                return new Leaf(hash, key, value);
+            }
+            if (leaf.hash == hash) return new Collision(hash, new Leaf[]{leaf, new Leaf(hash, key, value)});
+            return split(owner, shift, leaf, new Leaf(hash, key, value));
+        }
+        if (node instanceof Collision) {
+            Collision collision = (Collision) node;
+            if (collision.hash != hash) return split(owner, shift, collision, new Leaf(hash, key, value));
+            Leaf[] leaves = collision.leaves;
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    previous[0] = leaves[i];
+                    Leaf[] copy = leaves.clone();
+                    copy[i] = new Leaf(hash, key, value);
+                    return new Collision(hash, copy);
+                }
+            }
+            Leaf[] copy = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, copy, 0, leaves.length);
+            copy[leaves.length] = new Leaf(hash, key, value);
+            return new Collision(hash, copy);
+        }
+        Node branch = (Node) node;
+        int bit = bit(hash, shift);
+        int index = Integer.bitCount(branch.bitmap & (bit - 1));
+        if ((branch.bitmap & bit) == 0) {
+            Object[] slots = new Object[branch.slots.length + 1];
+            System.arraycopy(branch.slots, 0, slots, 0, index);
+            slots[index] = new Leaf(hash, key, value);
+            System.arraycopy(branch.slots, index, slots, index + 1, branch.slots.length - index);
+            return branch.with(owner, branch.bitmap | bit, slots);
+        }
+        Object child = branch.slots[index];
+        Object updated = assoc(owner, child, shift + BITS, hash, key, value, previous);
+        return updated == child ? branch : branch.withSlot(owner, index, updated);
+    }
+
+    /**
+     * Removes the key below {@code node}; returns null when nothing is left there.
+     */
+    private static Object dissoc(Object owner, Object node, int shift, int hash, Object key, Leaf[] previous) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            if (leaf.hash != hash || !leaf.key.equals(key)) return leaf;
+            previous[0] = leaf;
+            return null;
+        }
+        if (node instanceof Collision) {
+            Collision collision = (Collision) node;
+            if (collision.hash != hash) return collision;
+            Leaf[] leaves = collision.leaves;
+            for (int i = 0; i < leaves.length; i++) {
+                if (!leaves[i].key.equals(key)) continue;
+                previous[0] = leaves[i];
+                if (leaves.length == 2) return leaves[1 - i];
+                Leaf[] copy = new Leaf[leaves.length - 1];
+                System.arraycopy(leaves, 0, copy, 0, i);
+                System.arraycopy(leaves, i + 1, copy, i, leaves.length - i - 1);
+                return new Collision(hash, copy);
+            }
+            return collision;
+        }
+        Node branch = (Node) node;
+        int bit = bit(hash, shift);
+        if ((branch.bitmap & bit) == 0) return branch;
+        int index = Integer.bitCount(branch.bitmap & (bit - 1));
+        Object child = branch.slots[index];
+        Object updated = dissoc(owner, child, shift + BITS, hash, key, previous);
+        if (updated == child) return branch;
+        if (updated != null) return branch.withSlot(owner, index, updated);
+        if (branch.bitmap == bit) return null;
+        Object[] slots = new Object[branch.slots.length - 1];
+        System.arraycopy(branch.slots, 0, slots, 0, index);
+        System.arraycopy(branch.slots, index + 1, slots, index, slots.length - index);
+        return branch.with(owner, branch.bitmap & ~bit, slots);
+    }
+
+    /**
+     * A branch holding two entries whose hashes differ, nested until their hash bits part.
+     */
+    private static Node split(Object owner, int shift, Hashed a, Hashed b) {
+        int bitA = bit(a.hash, shift);
+        int bitB = bit(b.hash, shift);
+        if (bitA == bitB) return new Node(owner, bitA, new Object[]{split(owner, shift + BITS, a, b)});
+        boolean aFirst = ((a.hash >>> shift) & MASK) < ((b.hash >>> shift) & MASK);
+        return new Node(owner, bitA | bitB, aFirst ? new Object[]{a, b} : new Object[]{b, a});
+    }
+
+    private abstract static class Hashed {
+        final int hash;
+
+        Hashed(int hash) {
+            this.hash = hash;
+        }
+    }
+
+    private static final class Leaf extends Hashed {
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            super(hash);
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Collision extends Hashed {
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            super(hash);
+            this.leaves = leaves;
+        }
+    }
+
+    private static final class Node {
+        private final Object owner;
+        private int bitmap;
+        private Object[] slots;
+
+        Node(Object owner, int bitmap, Object[] slots) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        Node with(Object editor, int newBitmap, Object[] newSlots) {
+            if (owner != null && owner == editor) {
+                bitmap = newBitmap;
+                slots = newSlots;
+                return this;
+            }
+            return new Node(editor, newBitmap, newSlots);
+        }
+
+        Node withSlot(Object editor, int index, Object value) {
+            if (owner != null && owner == editor) {
+                slots[index] = value;
+                return this;
+            }
+            Object[] copy = slots.clone();
+            copy[index] = value;
+            return new Node(editor, bitmap, copy);
+        }
+    }
+}
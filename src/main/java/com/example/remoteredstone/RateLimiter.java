@@ -0,0 +1,70 @@
+package com.example.remoteredstone;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets per client address and API action. Each bucket holds up to {@code burst} tokens
+ * and refills at {@code perSecond}; a request that finds it empty is told how long to wait.
+ * Buckets that have been idle long enough to be full again are dropped now and then.
+ */
+public class RateLimiter {
+
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final long idleNanos;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextCleanupNanos = new AtomicLong(System.nanoTime() + CLEANUP_INTERVAL_NANOS);
+
+    public RateLimiter(double perSecond, int burst) {
+        this.tokensPerNano = perSecond / 1e9;
+        this.burst = Math.max(1, burst);
+        this.idleNanos = perSecond > 0 ? (long) (this.burst / tokensPerNano) : Long.MAX_VALUE;
+    }
+
+    public boolean isEnabled() {
+        return tokensPerNano > 0;
+    }
+
+    /**
+     * Takes a token for {@code client} calling {@code action}. Returns 0 if the request may go
+     * ahead, otherwise the number of milliseconds until a token is available.
+     */
+    public long tryAcquire(String client, String action) {
+        if (!isEnabled()) return 0L;
+        long now = System.nanoTime();
+        long cleanupAt = nextCleanupNanos.get();
+        if (now - cleanupAt > 0 && nextCleanupNanos.compareAndSet(cleanupAt, now + CLEANUP_INTERVAL_NANOS)) {
+            buckets.values().removeIf(bucket -> bucket.isIdle(now));
+        }
+        Bucket bucket = buckets.computeIfAbsent(client + " " + action, k -> new Bucket(now));
+        return bucket.take(now);
+    }
+
+    private final class Bucket {
+        private double tokens = burst;
+        private long updatedNanos;
+
+        Bucket(long now) {
+            this.updatedNanos = now;
+        }
+
+        synchronized long take(long now) {
+            tokens = Math.min(burst, tokens + (now - updatedNanos) * tokensPerNano);
+            updatedNanos = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return 0L;
+            }
+            return Math.max(1L, (long) Math.ceil((1.0 - tokens) / tokensPerNano / 1e6));
+        }
+
+        synchronized boolean isIdle(long now) {
+            return now - updatedNanos > idleNanos;
+        }
+    }
+}
@@ -5,24 +5,36 @@ import org.bukkit.ChatColor;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.Server;
 import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -32,35 +44,97 @@ public class RemoteRedstone extends JavaPlugin implements Listener {
 
     private WebServer webServer;
     public LocationManager locationManager;
+    private final Metrics metrics = new Metrics();
+    private BlockUpdateQueue blockUpdateQueue;
+    private LiveStateFeed liveStateFeed;
+    private LiveStateCache liveStateCache;
+    private ActionScheduler actionScheduler;
+    private AuditLog auditLog;
     private final Map<String, Location> selectedLocations = new ConcurrentHashMap<>();
+    private final Map<String, PendingSelection> pendingSelections = new ConcurrentHashMap<>();
     private static final String WAND_NAME = ChatColor.AQUA + "Remote Redstone Wand";
     private boolean consoleLoggingEnabled;
 
+    public RemoteRedstone() {
+    }
+
+    /**
+     * Used by the load test in {@code benchmarks/}, which runs the plugin against a simulated
+     * server outside a plugin class loader.
+     */
+    @Deprecated
+    protected RemoteRedstone(Server server, PluginDescriptionFile description, File dataFolder, File file) {
+        super(null, server, description, dataFolder, file);
+    }
+
     @Override
     public void onEnable() {
         saveDefaultConfig();
         this.consoleLoggingEnabled = getConfig().getBoolean("debug-console-logging", true);
         setupLogger();
+        this.auditLog = new AuditLog(new File(getDataFolder(), "audit.log"), getLogger(), metrics, getConfig().getInt("audit-buffer-size", 8192),
+                getConfig().getLong("audit-log-max-size-kb", 10240L) * 1024L, getConfig().getInt("audit-log-max-files", 5), getConfig().getInt("audit-recent-entries", 1000));
         this.locationManager = new LocationManager(this);
+        this.blockUpdateQueue = new BlockUpdateQueue(getLogger(), metrics, getConfig().getInt("block-updates-per-tick", 200), getConfig().getLong("block-update-budget-micros", 2000L),
+                BlockUpdateQueue.Physics.parse(getConfig().getString("block-physics", "normal")));
+        this.liveStateFeed = new LiveStateFeed(getConfig().getInt("live-state-history", 4096), getConfig().getInt("live-stream-max-clients", 16));
+        this.liveStateCache = new LiveStateCache(locationManager, liveStateFeed, getConfig().getInt("live-state-checks-per-tick", 500), getConfig().getInt("live-state-refresh-ticks", 20));
+        this.actionScheduler = new ActionScheduler(this, new File(getDataFolder(), "schedules.yml"));
+        blockUpdateQueue.setListener(this::publishBlockState);
+        locationManager.setSwitchRemovalListener(liveStateCache::forget);
+        metrics.gauge("remoteredstone_live_stream_clients", "Open live state event streams.", liveStateFeed::getOpenStreams);
+        Bukkit.getScheduler().runTaskTimer(this, metrics.timed("block-updates", blockUpdateQueue), 1L, 1L);
+        Bukkit.getScheduler().runTaskTimer(this, metrics.timed("live-states", liveStateCache), 1L, 1L);
+        Bukkit.getScheduler().runTaskTimer(this, metrics.timed("schedules", actionScheduler), 1L, 1L);
+        Bukkit.getScheduler().runTaskTimer(this, metrics.serverTickMonitor(), 1L, 1L);
         int port = getConfig().getInt("web-port", 8080);
         getServer().getPluginManager().registerEvents(this, this);
         List<String> worldNames = Bukkit.getWorlds().stream().map(World::getName).collect(Collectors.toList());
         try {
             String version = this.getDescription().getVersion();
-            webServer = new WebServer(port, this, worldNames, version);
-            webServer.start();
+            webServer = new WebServer(port, this, worldNames, version, getConfig().getInt("web-max-threads", 48), getConfig().getInt("web-max-queued", 64),
+                    getConfig().getInt("web-max-long-polls", 16));
+            webServer.start(getConfig().getInt("web-socket-timeout-ms", 5000));
             getLogger().info("Web server started on port: " + port);
         } catch (IOException e) {
             getLogger().severe("Failed to start web server! " + e.getMessage());
         }
+        long loadStart = System.nanoTime();
+        locationManager.loadAsync().whenComplete((snapshot, error) -> {
+            if (error != null) {
+                getLogger().severe("Could not load switch data, changes are disabled until a restart! " + locationManager.getLoadError());
+            } else {
+                getLogger().info("Loaded " + snapshot.getSwitches().size() + " switches and " + snapshot.getGroups().size() + " groups in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart) + " ms.");
+            }
+        });
     }
 
     @Override
     public void onDisable() {
+        if (liveStateFeed != null) {
+            liveStateFeed.close();
+        }
         if (webServer != null) {
             webServer.stop();
             getLogger().info("Web server stopped.");
         }
+        if (actionScheduler != null) {
+            actionScheduler.shutdown();
+        }
+        if (blockUpdateQueue != null) {
+            blockUpdateQueue.drainAll();
+        }
+        if (locationManager != null) {
+            locationManager.shutdown();
+        }
+        if (auditLog != null) {
+            auditLog.close();
+        }
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     private void setupLogger() {
@@ -93,6 +167,11 @@ public class RemoteRedstone extends JavaPlugin implements Listener {
         return playersData;
     }
 
+    public Location getPlayerLocation(String playerName) {
+        Player player = Bukkit.getPlayerExact(playerName);
+        return player != null && player.isOnline() ? player.getLocation() : null;
+    }
+
     public boolean giveSelectionWand(String playerName) {
         Player player = Bukkit.getPlayer(playerName);
         if (player == null || !player.isOnline()) {
@@ -105,11 +184,50 @@ public class RemoteRedstone extends JavaPlugin implements Listener {
         wand.setItemMeta(meta);
         player.getInventory().addItem(wand);
         player.sendMessage(ChatColor.GREEN + "You have received the Remote Redstone Wand!");
+        purgeExpiredSelections();
+        long timeoutMillis = getConfig().getLong("wand-selection-timeout-seconds", 60L) * 1000L;
+        PendingSelection previous = pendingSelections.put(playerName.toLowerCase(), new PendingSelection(System.currentTimeMillis() + timeoutMillis));
+        if (previous != null) {
+            previous.future.complete(null);
+        }
         return true;
     }
 
     public Location pollSelectedLocation(String playerName) {
-        return selectedLocations.remove(playerName.toLowerCase());
+        String key = playerName.toLowerCase();
+        Location loc = selectedLocations.remove(key);
+        if (loc != null) {
+            pendingSelections.remove(key);
+        }
+        return loc;
+    }
+
+    public Location awaitSelectedLocation(String playerName, long timeoutMillis) {
+        purgeExpiredSelections();
+        String key = playerName.toLowerCase();
+        Location loc = pollSelectedLocation(key);
+        if (loc != null) return loc;
+        PendingSelection pending = pendingSelections.get(key);
+        if (pending == null) return null;
+        long wait = Math.min(timeoutMillis, pending.expiresAtMillis - System.currentTimeMillis());
+        try {
+            if (wait > 0) pending.future.get(wait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return pollSelectedLocation(key);
+    }
+
+    private void purgeExpiredSelections() {
+        long now = System.currentTimeMillis();
+        pendingSelections.entrySet().removeIf(entry -> {
+            if (entry.getValue().expiresAtMillis > now) return false;
+            entry.getValue().future.complete(null);
+            return true;
+        });
     }
 
     @EventHandler
@@ -120,7 +238,12 @@ public class RemoteRedstone extends JavaPlugin implements Listener {
             if (WAND_NAME.equals(itemInHand.getItemMeta().getDisplayName())) {
                 event.setCancelled(true);
                 Location selectedLoc = event.getClickedBlock().getLocation();
-                selectedLocations.put(player.getName().toLowerCase(), selectedLoc);
+                String key = player.getName().toLowerCase();
+                selectedLocations.put(key, selectedLoc);
+                PendingSelection pending = pendingSelections.get(key);
+                if (pending != null) {
+                    pending.future.complete(selectedLoc);
+                }
                 player.sendMessage(ChatColor.GOLD + "Selected block at: " +
                         selectedLoc.getWorld().getName() + ", " +
                         selectedLoc.getBlockX() + ", " +
@@ -135,104 +258,112 @@ public class RemoteRedstone extends JavaPlugin implements Listener {
         }
     }
 
-    public void setGroupState(String groupId, boolean isON) {
-        List<String> groupsToAffect = getDescendantGroupsRecursive(groupId);
-        groupsToAffect.add(groupId);
-        locationManager.getAllLocations().entrySet().stream()
-                .filter(entry -> groupsToAffect.contains(entry.getValue().get("group")))
-                .forEach(entry -> {
-                    String switchId = entry.getKey();
-                    Map<String, Object> locData = entry.getValue();
-                    setSwitchBlock(
-                            locData.get("world").toString(),
-                            locData.get("x").toString(),
-                            locData.get("y").toString(),
-                            locData.get("z").toString(),
-                            isON
-                    );
-                    locationManager.updateLocationState(switchId, isON ? "ON" : "OFF");
-                });
-    }
-
-    private List<String> getDescendantGroupsRecursive(String parentId) {
-        List<String> descendants = new ArrayList<>();
-        Map<String, Map<String, Object>> allGroups = locationManager.getAllGroups();
-        List<String> directChildren = allGroups.entrySet().stream()
-                .filter(entry -> parentId.equals(entry.getValue().get("parent")))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        for (String childId : directChildren) {
-            descendants.add(childId);
-            descendants.addAll(getDescendantGroupsRecursive(childId));
-        }
-        return descendants;
-    }
-
-    public void setSwitchBlock(String worldName, String xStr, String yStr, String zStr, final boolean isON) {
-        World world = Bukkit.getWorld(worldName);
-        if (world == null) return;
-        try {
-            final int x = Integer.parseInt(xStr);
-            final int y = Integer.parseInt(yStr);
-            final int z = Integer.parseInt(zStr);
-            final Material materialToSet = isON ? Material.REDSTONE_BLOCK : Material.GLASS;
-            Bukkit.getScheduler().runTaskLater(this, () -> {
-                Chunk chunk = world.getChunkAt(x >> 4, z >> 4);
-                if (!chunk.isLoaded()) {
-                    getLogger().info("[Action] Chunk at " + chunk.getX() + "," + chunk.getZ() + " was not loaded. Loading for block placement.");
-                    chunk.load();
-                }
-                new Location(world, x, y, z).getBlock().setType(materialToSet);
-                getLogger().info("[Action] Set block at " + worldName + ":" + x + "," + y + "," + z + " to " + materialToSet.name());
-            }, 20L);
-        } catch (NumberFormatException e) {
-            getLogger().warning("Invalid coordinates provided to setSwitchBlock.");
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        syncSwitchBlock(event.getBlock(), Material.AIR, event.getPlayer(), "block-break");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        syncSwitchBlock(event.getBlock(), event.getBlock().getType(), event.getPlayer(), "block-place");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        Chunk chunk = event.getChunk();
+        liveStateCache.refreshChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        liveStateCache.forgetChunk(chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
+    }
+
+    private void syncSwitchBlock(Block block, Material material, Player player, String cause) {
+        Switch sw = locationManager.getSnapshot().getSwitchAt(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+        if (sw == null) return;
+        boolean isON = material == Material.REDSTONE_BLOCK;
+        liveStateCache.record(sw.getId(), isON);
+        if (sw.isOn() != isON) {
+            auditLog.record(player != null ? player.getName() : null, cause, sw.getId(), sw.getGroupId(), AuditLog.state(sw.isOn()), AuditLog.state(isON));
+            locationManager.updateLocationState(sw.getId(), isON);
         }
     }
 
-    public void removeSwitchBlock(String worldName, String xStr, String yStr, String zStr) {
-        World world = Bukkit.getWorld(worldName);
-        if (world == null) return;
-        try {
-            final int x = Integer.parseInt(xStr);
-            final int y = Integer.parseInt(yStr);
-            final int z = Integer.parseInt(zStr);
-            Bukkit.getScheduler().runTask(this, () -> {
-                Chunk chunk = world.getChunkAt(x >> 4, z >> 4);
-                if (!chunk.isLoaded()) {
-                    chunk.load();
-                }
-                new Location(world, x, y, z).getBlock().setType(Material.AIR);
-            });
-        } catch (NumberFormatException e) {
-            getLogger().warning("Invalid coordinates provided to removeSwitchBlock.");
+    private void publishBlockState(String worldName, int x, int y, int z, Material material) {
+        Switch sw = locationManager.getSnapshot().getSwitchAt(worldName, x, y, z);
+        if (sw != null) {
+            liveStateCache.record(sw.getId(), material == Material.REDSTONE_BLOCK);
+        }
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public ActionScheduler getActionScheduler() {
+        return actionScheduler;
+    }
+
+    public LiveStateFeed getLiveStateFeed() {
+        return liveStateFeed;
+    }
+
+    public List<Switch> setGroupState(String groupId, boolean isON) {
+        List<Switch> affected = locationManager.setGroupState(groupId, isON);
+        for (Switch sw : affected) {
+            setSwitchBlock(sw.getWorld(), sw.getX(), sw.getY(), sw.getZ(), isON);
         }
+        return affected;
+    }
+
+    /**
+     * Applies toggles the dashboard requested but the coalescer still holds, so a change made
+     * outside the web server does not overtake them.
+     */
+    public void flushPendingToggles() {
+        if (webServer != null) webServer.flushToggles();
+    }
+
+    public BatchResult applyBatch(List<BatchOperation> operations) {
+        BatchResult result = locationManager.applyBatch(operations);
+        if (result.isSuccess()) {
+            for (Switch sw : result.getRemovedSwitches()) {
+                removeSwitchBlock(sw.getWorld(), sw.getX(), sw.getY(), sw.getZ());
+            }
+            LocationSnapshot snapshot = locationManager.getSnapshot();
+            for (Switch placed : result.getPlacedSwitches()) {
+                Switch sw = snapshot.getSwitch(placed.getId());
+                if (sw != null) setSwitchBlock(sw.getWorld(), sw.getX(), sw.getY(), sw.getZ(), sw.isOn());
+            }
+        }
+        return result;
+    }
+
+    public void setSwitchBlock(String worldName, int x, int y, int z, boolean isON) {
+        blockUpdateQueue.enqueue(worldName, x, y, z, isON ? Material.REDSTONE_BLOCK : Material.GLASS);
+    }
+
+    public void removeSwitchBlock(String worldName, int x, int y, int z) {
+        blockUpdateQueue.enqueue(worldName, x, y, z, Material.AIR);
     }
 
     public Map<String, Boolean> getLiveBlockStatesIfLoaded(List<String> switchIdsToCheck) {
-        Map<String, Boolean> liveStates = new HashMap<>();
-        if (switchIdsToCheck == null || switchIdsToCheck.isEmpty()) return liveStates;
-        Map<String, Map<String, Object>> allLocations = locationManager.getAllLocations();
-        try {
-            return Bukkit.getScheduler().callSyncMethod(this, () -> {
-                for (String switchId : switchIdsToCheck) {
-                    Map<String, Object> locData = allLocations.get(switchId);
-                    if (locData == null) continue;
-                    World world = Bukkit.getWorld(locData.get("world").toString());
-                    if (world == null) continue;
-                    int x = ((Number) locData.get("x")).intValue();
-                    int y = ((Number) locData.get("y")).intValue();
-                    int z = ((Number) locData.get("z")).intValue();
-                    if (world.isChunkLoaded(x >> 4, z >> 4)) {
-                        boolean isON = new Location(world, x, y, z).getBlock().getType() == Material.REDSTONE_BLOCK;
-                        liveStates.put(switchId, isON);
-                    }
-                }
-                return liveStates;
-            }).get();
-        } catch (Exception e) {
-            getLogger().severe("Error during live block state check: " + e.getMessage());
-            return Collections.emptyMap();
+        if (switchIdsToCheck == null || switchIdsToCheck.isEmpty()) return new HashMap<>();
+        return liveStateCache.getStates(switchIdsToCheck);
+    }
+
+    public long getLiveStatesUpdatedMillis() {
+        return liveStateCache.getLastSweepMillis();
+    }
+
+    private static final class PendingSelection {
+        final CompletableFuture<Location> future = new CompletableFuture<>();
+        final long expiresAtMillis;
+
+        PendingSelection(long expiresAtMillis) {
+            this.expiresAtMillis = expiresAtMillis;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package com.example.remoteredstone;
+
+/**
+ * A timed action on a switch or a group. It first runs {@code delayTicks} after it is created,
+ * or at the next {@code worldTime} (0-23999) in {@code world} when one is set, and then again
+ * every {@code repeatTicks} or every Minecraft day respectively. {@code pulse} turns the target
+ * on and back off after {@code pulseTicks}.
+ */
+public final class ScheduledAction {
+
+    private final String id;
+    private final String targetType;
+    private final String targetId;
+    private final String action;
+    private final long pulseTicks;
+    private final long repeatTicks;
+    private final String world;
+    private final long worldTime;
+
+    public ScheduledAction(String id, String targetType, String targetId, String action, long pulseTicks, long repeatTicks, String world, long worldTime) {
+        this.id = id;
+        this.targetType = targetType;
+        this.targetId = targetId;
+        this.action = action;
+        this.pulseTicks = pulseTicks;
+        this.repeatTicks = repeatTicks;
+        this.world = world == null || world.isEmpty() ? null : world;
+        this.worldTime = worldTime;
+    }
+
+    public String getId() { return id; }
+    public String getTargetType() { return targetType; }
+    public String getTargetId() { return targetId; }
+    public String getAction() { return action; }
+    public long getPulseTicks() { return pulseTicks; }
+    public long getRepeatTicks() { return repeatTicks; }
+    public String getWorld() { return world; }
+    public long getWorldTime() { return worldTime; }
+    public boolean isGroup() { return "group".equals(targetType); }
+    public boolean isDaily() { return world != null && worldTime >= 0; }
+    public boolean isRecurring() { return isDaily() || repeatTicks > 0; }
+}
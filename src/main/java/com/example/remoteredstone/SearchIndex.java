@@ -0,0 +1,268 @@
+package com.example.remoteredstone;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over switch and group names and group memos. Text is NFKC-normalised and
+ * lower-cased and every character and character pair is posted, which gives substring matching
+ * for Japanese names without a tokenizer. A query term only scans the shortest posting list of
+ * its grams. {@link LocationManager} keeps the index in step with each commit, touching only the
+ * changed entries.
+ */
+public class SearchIndex {
+
+    private static final String SWITCH = "s:";
+    private static final String GROUP = "g:";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    private final Map<String, Doc> docs = new HashMap<>();
+
+    public void rebuild(LocationSnapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            docs.clear();
+            for (Switch sw : snapshot.getSwitches().values()) put(SWITCH + sw.getId(), sw.getName(), "");
+            for (Group group : snapshot.getGroups().values()) put(GROUP + group.getId(), group.getName(), group.getMemo());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void update(LocationSnapshot snapshot, Collection<String> changedSwitchIds, Collection<String> changedGroupIds) {
+        if (changedSwitchIds.isEmpty() && changedGroupIds.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            for (String switchId : changedSwitchIds) {
+                Switch sw = snapshot.getSwitch(switchId);
+                put(SWITCH + switchId, sw != null ? sw.getName() : null, "");
+            }
+            for (String groupId : changedGroupIds) {
+                Group group = snapshot.getGroup(groupId);
+                put(GROUP + groupId, group != null ? group.getName() : null, group != null ? group.getMemo() : null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code query} against the index and {@code snapshot}. Hits are ranked by how well the
+     * name matches (exact, prefix, substring, memo only), then by name.
+     */
+    public Result search(LocationSnapshot snapshot, Query query) {
+        List<String> terms = new ArrayList<>();
+        for (String term : normalize(query.text).split("\\s+")) {
+            if (!term.isEmpty()) terms.add(term);
+        }
+        if (terms.isEmpty() && !query.hasCoordinateFilter()) {
+            throw new IllegalArgumentException("Give a search text or a coordinate filter.");
+        }
+        Set<String> subtree = null;
+        if (query.groupId != null) {
+            subtree = new HashSet<>(snapshot.getDescendantGroupIds(query.groupId));
+            subtree.add(query.groupId);
+        }
+        List<Hit> hits = new ArrayList<>();
+        if (terms.isEmpty()) {
+            if (query.includeSwitches()) {
+                for (Switch sw : candidateSwitches(snapshot, query)) {
+                    if (matches(sw, query, subtree)) hits.add(new Hit(sw, null, 0));
+                }
+            }
+        } else {
+            lock.readLock().lock();
+            try {
+                for (String key : candidates(terms)) {
+                    Doc doc = docs.get(key);
+                    int score = score(doc, terms);
+                    if (score == 0) continue;
+                    if (key.startsWith(SWITCH)) {
+                        Switch sw = snapshot.getSwitch(key.substring(SWITCH.length()));
+                        if (sw != null && query.includeSwitches() && matches(sw, query, subtree)) hits.add(new Hit(sw, null, score));
+                    } else if (query.includeGroups() && !query.hasCoordinateFilter()) {
+                        Group group = snapshot.getGroup(key.substring(GROUP.length()));
+                        if (group != null && (subtree == null || subtree.contains(group.getId()))) hits.add(new Hit(null, group, score));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        hits.sort((a, b) -> a.score != b.score ? Integer.compare(b.score, a.score) : a.getName().compareTo(b.getName()));
+        int from = Math.min(query.offset, hits.size());
+        int to = Math.min(hits.size(), from + query.limit);
+        return new Result(hits.size(), new ArrayList<>(hits.subList(from, to)));
+    }
+
+    static String normalize(String text) {
+        if (text == null) return "";
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    private void put(String key, String name, String memo) {
+        Doc previous = docs.get(key);
+        String normalizedName = normalize(name);
+        String normalizedMemo = normalize(memo);
+        if (previous != null && previous.name.equals(normalizedName) && previous.memo.equals(normalizedMemo) && name != null) return;
+        if (previous != null) {
+            for (String gram : grams(previous.name, previous.memo)) {
+                Set<String> keys = postings.get(gram);
+                if (keys != null && keys.remove(key) && keys.isEmpty()) postings.remove(gram);
+            }
+            docs.remove(key);
+        }
+        if (name == null) return;
+        Doc doc = new Doc(normalizedName, normalizedMemo);
+        docs.put(key, doc);
+        for (String gram : grams(doc.name, doc.memo)) {
+            postings.computeIfAbsent(gram, g -> new HashSet<>()).add(key);
+        }
+    }
+
+    private static Set<String> grams(String name, String memo) {
+        Set<String> grams = new HashSet<>();
+        addGrams(grams, name);
+        addGrams(grams, memo);
+        return grams;
+    }
+
+    private static void addGrams(Set<String> grams, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) grams.add(text.substring(i, i + 2));
+        }
+    }
+
+    private Collection<String> candidates(List<String> terms) {
+        Set<String> smallest = null;
+        for (String term : terms) {
+            for (String gram : term.length() == 1 ? Collections.singleton(term) : bigrams(term)) {
+                Set<String> keys = postings.get(gram);
+                if (keys == null) return Collections.emptySet();
+                if (smallest == null || keys.size() < smallest.size()) smallest = keys;
+            }
+        }
+        return smallest;
+    }
+
+    private static List<String> bigrams(String term) {
+        List<String> bigrams = new ArrayList<>(term.length() - 1);
+        for (int i = 0; i + 1 < term.length(); i++) bigrams.add(term.substring(i, i + 2));
+        return bigrams;
+    }
+
+    private static int score(Doc doc, List<String> terms) {
+        int score = 0;
+        for (String term : terms) {
+            if (doc.name.equals(term)) score += 100;
+            else if (doc.name.startsWith(term)) score += 50;
+            else if (doc.name.contains(term)) score += 20;
+            else if (doc.memo.contains(term)) score += 5;
+            else return 0;
+        }
+        return score;
+    }
+
+    private static Collection<Switch> candidateSwitches(LocationSnapshot snapshot, Query query) {
+        if (query.world != null && query.minX != null && query.minX.equals(query.maxX) && query.minY != null && query.minY.equals(query.maxY)
+                && query.minZ != null && query.minZ.equals(query.maxZ)) {
+            Switch sw = snapshot.getSwitchAt(query.world, query.minX, query.minY, query.minZ);
+            return sw != null ? Collections.singletonList(sw) : Collections.<Switch>emptyList();
+        }
+        if (query.world != null && query.minX != null && query.maxX != null && query.minZ != null && query.maxZ != null) {
+            return snapshot.getSwitchesInRegion(query.world, query.minX, query.minZ, query.maxX, query.maxZ);
+        }
+        return snapshot.getSwitches().values();
+    }
+
+    private static boolean matches(Switch sw, Query query, Set<String> subtree) {
+        if (query.world != null && !query.world.equals(sw.getWorld())) return false;
+        if (!inRange(sw.getX(), query.minX, query.maxX) || !inRange(sw.getY(), query.minY, query.maxY) || !inRange(sw.getZ(), query.minZ, query.maxZ)) return false;
+        return subtree == null || subtree.contains(sw.getGroupId());
+    }
+
+    private static boolean inRange(int value, Integer min, Integer max) {
+        return (min == null || value >= min) && (max == null || value <= max);
+    }
+
+    private static final class Doc {
+        final String name;
+        final String memo;
+
+        Doc(String name, String memo) {
+            this.name = name;
+            this.memo = memo;
+        }
+    }
+
+    /**
+     * Search parameters. {@code type} is {@code switch}, {@code group} or null for both;
+     * coordinate bounds are inclusive and only apply to switches.
+     */
+    public static final class Query {
+        String text;
+        String type;
+        String groupId;
+        String world;
+        Integer minX;
+        Integer maxX;
+        Integer minY;
+        Integer maxY;
+        Integer minZ;
+        Integer maxZ;
+        int offset;
+        int limit = 50;
+
+        boolean hasCoordinateFilter() {
+            return world != null || minX != null || maxX != null || minY != null || maxY != null || minZ != null || maxZ != null;
+        }
+
+        boolean includeSwitches() {
+            return type == null || "switch".equals(type);
+        }
+
+        boolean includeGroups() {
+            return type == null || "group".equals(type);
+        }
+    }
+
+    public static final class Hit {
+        public final Switch sw;
+        public final Group group;
+        public final int score;
+
+        Hit(Switch sw, Group group, int score) {
+            this.sw = sw;
+            this.group = group;
+            this.score = score;
+        }
+
+        String getName() {
+            String name = sw != null ? sw.getName() : group.getName();
+            return name != null ? name : "";
+        }
+    }
+
+    public static final class Result {
+        public final int total;
+        public final List<Hit> hits;
+
+        Result(int total, List<Hit> hits) {
+            this.total = total;
+            this.hits = hits;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.remoteredstone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Switch positions per world, grouped by chunk. Chunks are found through a {@link LongMap} keyed by
+ * the packed chunk coordinates, and each chunk keeps its switches' packed block positions in a
+ * small array. Immutable: {@link Editor} copies the chunk table of a world and the chunks it
+ * changes, and shares everything else with the previous index.
+ */
+public final class SpatialIndex {
+
+    static final SpatialIndex EMPTY = new SpatialIndex(Collections.<String, LongMap<Chunk>>emptyMap());
+
+    private final Map<String, LongMap<Chunk>> worlds;
+
+    private SpatialIndex(Map<String, LongMap<Chunk>> worlds) {
+        this.worlds = worlds;
+    }
+
+    static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public String getSwitchIdAt(String world, int x, int y, int z) {
+        Chunk chunk = getChunk(world, x >> 4, z >> 4);
+        return chunk != null ? chunk.idAt(blockKey(x, y, z)) : null;
+    }
+
+    public Chunk getChunk(String world, int chunkX, int chunkZ) {
+        LongMap<Chunk> chunks = worlds.get(world);
+        return chunks != null ? chunks.get(chunkKey(chunkX, chunkZ)) : null;
+    }
+
+    /**
+     * Every chunk that holds at least one switch, in no particular order.
+     */
+    public List<Chunk> getChunks() {
+        List<Chunk> result = new ArrayList<>();
+        for (LongMap<Chunk> chunks : worlds.values()) chunks.forEach((key, chunk) -> result.add(chunk));
+        return result;
+    }
+
+    /**
+     * Chunks with switches that overlap the block rectangle, bounds inclusive. Small rectangles
+     * probe each chunk position; rectangles with more chunks than the world has entries scan
+     * the table instead.
+     */
+    public List<Chunk> getChunksInRegion(String world, int minX, int minZ, int maxX, int maxZ) {
+        LongMap<Chunk> chunks = worlds.get(world);
+        List<Chunk> result = new ArrayList<>();
+        if (chunks == null) return result;
+        int minChunkX = minX >> 4;
+        int maxChunkX = maxX >> 4;
+        int minChunkZ = minZ >> 4;
+        int maxChunkZ = maxZ >> 4;
+        long area = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkZ - minChunkZ + 1);
+        if (area <= chunks.size()) {
+            for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+                for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                    Chunk chunk = chunks.get(chunkKey(cx, cz));
+                    if (chunk != null) result.add(chunk);
+                }
+            }
+        } else {
+            chunks.forEach((key, chunk) -> {
+                if (chunk.x >= minChunkX && chunk.x <= maxChunkX && chunk.z >= minChunkZ && chunk.z <= maxChunkZ) result.add(chunk);
+            });
+        }
+        return result;
+    }
+
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * The switches in one chunk of one world.
+     */
+    public static final class Chunk {
+        private final String world;
+        private final int x;
+        private final int z;
+        private final long[] blocks;
+        private final String[] ids;
+
+        Chunk(String world, int x, int z, long[] blocks, String[] ids) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+            this.blocks = blocks;
+            this.ids = ids;
+        }
+
+        public String getWorld() {
+            return world;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        public List<String> getSwitchIds() {
+            return Collections.unmodifiableList(Arrays.asList(ids));
+        }
+
+        String idAt(long blockKey) {
+            for (int i = 0; i < blocks.length; i++) {
+                if (blocks[i] == blockKey) return ids[i];
+            }
+            return null;
+        }
+
+        Chunk with(long blockKey, String id) {
+            for (int i = 0; i < blocks.length; i++) {
+                if (blocks[i] == blockKey) {
+                    String[] newIds = ids.clone();
+                    newIds[i] = id;
+                    return new Chunk(world, x, z, blocks, newIds);
+                }
+            }
+            long[] newBlocks = Arrays.copyOf(blocks, blocks.length + 1);
+            String[] newIds = Arrays.copyOf(ids, ids.length + 1);
+            newBlocks[blocks.length] = blockKey;
+            newIds[ids.length] = id;
+            return new Chunk(world, x, z, newBlocks, newIds);
+        }
+
+        Chunk without(long blockKey, String id) {
+            for (int i = 0; i < blocks.length; i++) {
+                if (blocks[i] != blockKey || !ids[i].equals(id)) continue;
+                if (blocks.length == 1) return null;
+                long[] newBlocks = new long[blocks.length - 1];
+                String[] newIds = new String[ids.length - 1];
+                System.arraycopy(blocks, 0, newBlocks, 0, i);
+                System.arraycopy(blocks, i + 1, newBlocks, i, blocks.length - i - 1);
+                System.arraycopy(ids, 0, newIds, 0, i);
+                System.arraycopy(ids, i + 1, newIds, i, ids.length - i - 1);
+                return new Chunk(world, x, z, newBlocks, newIds);
+            }
+            return this;
+        }
+    }
+
+    static final class Editor {
+        private final SpatialIndex base;
+        private Map<String, LongMap<Chunk>> worlds;
+        private final Set<String> copiedWorlds = new HashSet<>();
+
+        private Editor(SpatialIndex base) {
+            this.base = base;
+        }
+
+        void add(Switch sw) {
+            LongMap<Chunk> chunks = chunks(sw.getWorld());
+            int chunkX = sw.getX() >> 4;
+            int chunkZ = sw.getZ() >> 4;
+            long key = chunkKey(chunkX, chunkZ);
+            Chunk chunk = chunks.get(key);
+            if (chunk == null) chunk = new Chunk(sw.getWorld(), chunkX, chunkZ, new long[0], new String[0]);
+            chunks.put(key, chunk.with(blockKey(sw.getX(), sw.getY(), sw.getZ()), sw.getId()));
+        }
+
+        void remove(Switch sw) {
+            LongMap<Chunk> chunks = chunks(sw.getWorld());
+            long key = chunkKey(sw.getX() >> 4, sw.getZ() >> 4);
+            Chunk chunk = chunks.get(key);
+            if (chunk == null) return;
+            Chunk updated = chunk.without(blockKey(sw.getX(), sw.getY(), sw.getZ()), sw.getId());
+            if (updated == null) chunks.remove(key);
+            else chunks.put(key, updated);
+        }
+
+        SpatialIndex build() {
+            if (worlds == null) return base;
+            worlds.values().removeIf(chunks -> chunks.size() == 0);
+            return new SpatialIndex(Collections.unmodifiableMap(worlds));
+        }
+
+        private LongMap<Chunk> chunks(String world) {
+            if (worlds == null) worlds = new HashMap<>(base.worlds);
+            if (copiedWorlds.add(world)) {
+                LongMap<Chunk> current = worlds.get(world);
+                LongMap<Chunk> copy = current != null ? current.copy() : new LongMap<>();
+                worlds.put(world, copy);
+                return copy;
+            }
+            return worlds.get(world);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.remoteredstone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Dashboard CSS and JavaScript read from the plugin jar. Each file is published under a name that
+ * contains a hash of its content, e.g. {@code /static/dashboard.3f9a0c12d4e5.js}, and is
+ * compressed once when it is registered, so every response can be marked immutable and served
+ * straight from memory.
+ */
+public class StaticAssets {
+
+    public static final String PREFIX = "/static/";
+    static final String SORTABLE_VERSION = "1.15.0";
+    private static final String SORTABLE_CDN = "https://cdn.jsdelivr.net/npm/sortablejs@" + SORTABLE_VERSION + "/Sortable.min.js";
+
+    private final ClassLoader classLoader;
+    private final Logger logger;
+    private final Map<String, String> urls = new ConcurrentHashMap<>();
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public StaticAssets(ClassLoader classLoader, Logger logger) {
+        this.classLoader = classLoader;
+        this.logger = logger;
+    }
+
+    public static StaticAssets dashboard(ClassLoader classLoader, Logger logger) {
+        StaticAssets assets = new StaticAssets(classLoader, logger);
+        assets.register("dashboard.css", "static/dashboard.css", "text/css; charset=utf-8");
+        assets.register("dashboard.js", "static/dashboard.js", "application/javascript; charset=utf-8");
+        assets.register("sortable.js", "META-INF/resources/webjars/sortablejs/" + SORTABLE_VERSION + "/Sortable.min.js", "application/javascript; charset=utf-8");
+        return assets;
+    }
+
+    /**
+     * Loads {@code resource} and makes it available as {@code name} with the content hash
+     * inserted before the extension. Returns false if the resource is not in the jar.
+     */
+    public boolean register(String name, String resource, String mimeType) {
+        byte[] data;
+        try (InputStream in = classLoader.getResourceAsStream(resource)) {
+            if (in == null) {
+                if (logger != null) logger.warning("Static asset " + resource + " is missing from the plugin jar.");
+                return false;
+            }
+            data = readFully(in);
+        } catch (IOException e) {
+            if (logger != null) logger.warning("Could not read static asset " + resource + ": " + e.getMessage());
+            return false;
+        }
+        String hash = sha256(data).substring(0, 12);
+        int dot = name.lastIndexOf('.');
+        String fileName = dot < 0 ? name + "." + hash : name.substring(0, dot) + "." + hash + name.substring(dot);
+        Asset asset = new Asset(mimeType, "\"" + hash + "\"", data, gzip(data));
+        assets.put(fileName, asset);
+        urls.put(name, PREFIX + fileName);
+        return true;
+    }
+
+    /**
+     * The hashed URL of {@code name}, or null if it was not registered.
+     */
+    public String url(String name) {
+        return urls.get(name);
+    }
+
+    /**
+     * URL for the Sortable library, falling back to the CDN when the jar was built without it.
+     */
+    public String sortableUrl() {
+        String url = urls.get("sortable.js");
+        return url != null ? url : SORTABLE_CDN;
+    }
+
+    /**
+     * The asset for a request path below {@link #PREFIX}, or null for unknown or outdated names.
+     */
+    public Asset get(String uri) {
+        return uri.startsWith(PREFIX) ? assets.get(uri.substring(PREFIX.length())) : null;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static final class Asset {
+        public final String mimeType;
+        public final String etag;
+        public final byte[] data;
+        public final byte[] gzippedData;
+
+        Asset(String mimeType, String etag, byte[] data, byte[] gzippedData) {
+            this.mimeType = mimeType;
+            this.etag = etag;
+            this.data = data;
+            this.gzippedData = gzippedData;
+        }
+    }
+}
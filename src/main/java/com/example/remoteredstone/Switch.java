@@ -0,0 +1,42 @@
+package com.example.remoteredstone;
+
+public final class Switch {
+
+    private final String id;
+    private final String name;
+    private final String world;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final boolean on;
+    private final String groupId;
+
+    public Switch(String id, String name, String world, int x, int y, int z, boolean on, String groupId) {
+        this.id = id;
+        this.name = name;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.on = on;
+        this.groupId = groupId;
+    }
+
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public String getWorld() { return world; }
+    public int getX() { return x; }
+    public int getY() { return y; }
+    public int getZ() { return z; }
+    public boolean isOn() { return on; }
+    public String getState() { return on ? "ON" : "OFF"; }
+    public String getGroupId() { return groupId; }
+
+    public Switch withName(String newName) {
+        return new Switch(id, newName, world, x, y, z, on, groupId);
+    }
+
+    public Switch withState(boolean newOn) {
+        return newOn == on ? this : new Switch(id, name, world, x, y, z, newOn, groupId);
+    }
+}
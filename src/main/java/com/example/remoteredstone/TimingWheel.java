@@ -0,0 +1,124 @@
+package com.example.remoteredstone;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel counted in server ticks. Four levels of 256 slots cover about
+ * 2^32 ticks; scheduling and cancelling are O(1), and {@link #advance} only looks at one slot
+ * per tick plus the occasional cascade of a higher-level slot into the levels below it.
+ * Not thread-safe: it is owned by the main thread.
+ */
+public class TimingWheel<T> {
+
+    private static final int BITS = 8;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELAY = (1L << (BITS * LEVELS)) - 1;
+
+    private final Timer<T>[][] wheels;
+    private long now;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel() {
+        wheels = new Timer[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Timer<T> head = new Timer<>(0L, null);
+                head.prev = head;
+                head.next = head;
+                wheels[level][slot] = head;
+            }
+        }
+    }
+
+    public long getTick() {
+        return now;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Schedules {@code payload} to be handed out by the {@link #advance} call that is
+     * {@code delayTicks} ticks from now (at least one).
+     */
+    public Timer<T> schedule(long delayTicks, T payload) {
+        Timer<T> timer = new Timer<>(now + Math.max(1L, Math.min(MAX_DELAY, delayTicks)), payload);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    public boolean cancel(Timer<T> timer) {
+        if (timer == null || timer.prev == null) return false;
+        timer.unlink();
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves one tick forward and passes every timer that is now due to {@code expired}.
+     */
+    public void advance(Consumer<T> expired) {
+        now++;
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((now & ((1L << (BITS * level)) - 1)) == 0) {
+                cascade(level, (int) ((now >>> (BITS * level)) & MASK));
+            }
+        }
+        Timer<T> head = wheels[0][(int) (now & MASK)];
+        while (head.next != head) {
+            Timer<T> timer = head.next;
+            timer.unlink();
+            size--;
+            expired.accept(timer.payload);
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        Timer<T> head = wheels[level][slot];
+        while (head.next != head) {
+            Timer<T> timer = head.next;
+            timer.unlink();
+            place(timer);
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        int level = 0;
+        while (level < LEVELS - 1 && (timer.deadline >>> (BITS * (level + 1))) != (now >>> (BITS * (level + 1)))) {
+            level++;
+        }
+        Timer<T> head = wheels[level][(int) ((timer.deadline >>> (BITS * level)) & MASK)];
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    public static final class Timer<T> {
+        private final long deadline;
+        private final T payload;
+        private Timer<T> prev;
+        private Timer<T> next;
+
+        Timer(long deadline, T payload) {
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
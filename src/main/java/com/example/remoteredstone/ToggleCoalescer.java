@@ -0,0 +1,101 @@
+package com.example.remoteredstone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects toggle-switch requests for a short window and then applies only the last requested
+ * state of each switch, so a burst of clicks on one switch costs one block update and one
+ * commit. The window starts with the first request, which bounds the added delay. Other changes
+ * call {@link #flush()} first, so they are never applied ahead of an earlier toggle.
+ */
+public class ToggleCoalescer {
+
+    private final RemoteRedstone plugin;
+    private final long windowMillis;
+    private final Metrics.Counter coalescedCounter;
+    private final ScheduledExecutorService executor;
+    private final Map<String, Boolean> pending = new LinkedHashMap<>();
+    private final Object applyLock = new Object();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public ToggleCoalescer(RemoteRedstone plugin, long windowMillis) {
+        this.plugin = plugin;
+        this.windowMillis = Math.max(0L, windowMillis);
+        this.coalescedCounter = plugin.getMetrics().counter("remoteredstone_toggles_coalesced_total", "Toggle requests replaced by a later request for the same switch.");
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "RemoteRedstone-Toggles");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void submit(String switchId, boolean isON) {
+        if (windowMillis == 0L) {
+            synchronized (applyLock) {
+                apply(Collections.singletonMap(switchId, isON));
+            }
+            return;
+        }
+        synchronized (this) {
+            if (pending.put(switchId, isON) != null) {
+                coalescedCounter.inc();
+            }
+            if (scheduledFlush == null && !executor.isShutdown()) {
+                scheduledFlush = executor.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Applies the pending toggles now. Returns only once any flush already in progress on another
+     * thread has finished as well.
+     */
+    public void flush() {
+        synchronized (applyLock) {
+            Map<String, Boolean> batch;
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (pending.isEmpty()) return;
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+            try {
+                apply(batch);
+            } catch (RuntimeException e) {
+                // Thrown on the executor thread this would only end up in the discarded future.
+                plugin.getLogger().warning("Could not apply " + batch.size() + " toggled switches: " + e);
+            }
+        }
+    }
+
+    public void close() {
+        executor.shutdown();
+        flush();
+    }
+
+    private void apply(Map<String, Boolean> states) {
+        LocationSnapshot snapshot = plugin.locationManager.getSnapshot();
+        List<String> turnOn = new ArrayList<>();
+        List<String> turnOff = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : states.entrySet()) {
+            Switch sw = snapshot.getSwitch(entry.getKey());
+            if (sw == null) continue;
+            boolean isON = entry.getValue();
+            plugin.setSwitchBlock(sw.getWorld(), sw.getX(), sw.getY(), sw.getZ(), isON);
+            if (sw.isOn() != isON) (isON ? turnOn : turnOff).add(sw.getId());
+        }
+        if (!turnOn.isEmpty()) plugin.locationManager.updateLocationStates(turnOn, true);
+        if (!turnOff.isEmpty()) plugin.locationManager.updateLocationStates(turnOff, false);
+    }
+}
@@ -6,37 +6,244 @@ import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.NanoHTTPD.ResponseException;
 import org.bukkit.Location;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.Socket;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
 
 public class WebServer extends NanoHTTPD {
 
+    private static final int LONG_POLL_RETRY_SECONDS = 5;
+    private static final Pattern METRIC_ACTION = Pattern.compile("[a-z0-9-]{1,32}");
+    private static final Set<String> AUDITED_ACTIONS = new HashSet<>(Arrays.asList("batch", "save-group-order", "schedule-action", "cancel-schedule",
+            "update-group", "update-switch", "toggle-switch", "remove-switch", "request-wand", "add-group", "move-group", "remove-group", "toggle-group", "add-switch"));
+    private static final String LOADING_PAGE = "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><meta http-equiv=\"refresh\" content=\"2\"><title>Remote Redstone</title></head>"
+            + "<body style=\"font-family:sans-serif;text-align:center;margin-top:20vh\">Loading switch data...</body></html>";
+    private static final String LOAD_FAILED_PAGE = "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Remote Redstone</title></head>"
+            + "<body style=\"font-family:sans-serif;text-align:center;margin-top:20vh\">Switch data could not be loaded, see the server log.</body></html>";
+
     private final RemoteRedstone plugin;
-    private final List<String> worldNames;
-    private final String pluginVersion;
+    private final StaticAssets staticAssets;
+    private final DashboardRenderer dashboardRenderer;
     private final Gson gson = new Gson();
+    private final BoundedAsyncRunner asyncRunner;
+    private final Metrics metrics;
+    private final Metrics.Counter rejectedConnections;
+    private final RateLimiter rateLimiter;
+    private final ToggleCoalescer toggleCoalescer;
+    private final Semaphore longPollSlots;
+    private final Metrics.Counter rejectedLongPolls;
 
-    public WebServer(int port, RemoteRedstone plugin, List<String> worldNames, String pluginVersion) {
+    public WebServer(int port, RemoteRedstone plugin, List<String> worldNames, String pluginVersion, int maxThreads, int maxQueued, int maxLongPolls) {
         super(port);
         this.plugin = plugin;
-        this.worldNames = worldNames;
-        this.pluginVersion = pluginVersion;
+        this.staticAssets = StaticAssets.dashboard(plugin.getClass().getClassLoader(), plugin.getLogger());
+        this.dashboardRenderer = new DashboardRenderer(worldNames, pluginVersion, staticAssets);
+        this.asyncRunner = new BoundedAsyncRunner(maxThreads, maxQueued, this::rejectBusy);
+        setAsyncRunner(asyncRunner);
+        this.metrics = plugin.getMetrics();
+        this.rejectedConnections = metrics.counter("remoteredstone_http_rejected_connections_total", "Connections answered with 503 because the worker pool and queue were full.");
+        metrics.gauge("remoteredstone_http_workers_active", "Web worker threads handling a connection.", () -> asyncRunner.getActiveCount());
+        metrics.gauge("remoteredstone_http_connections_queued", "Connections waiting for a web worker thread.", () -> asyncRunner.getQueuedCount());
+        this.rateLimiter = new RateLimiter(plugin.getConfig().getDouble("rate-limit-per-second", 10.0), plugin.getConfig().getInt("rate-limit-burst", 20));
+        this.toggleCoalescer = new ToggleCoalescer(plugin, plugin.getConfig().getLong("toggle-coalesce-ms", 150L));
+        this.longPollSlots = new Semaphore(Math.max(0, maxLongPolls));
+        this.rejectedLongPolls = metrics.counter("remoteredstone_http_rejected_long_polls_total", "Long-poll requests answered with 503 because too many were already waiting.");
+        metrics.gauge("remoteredstone_http_long_polls_waiting", "Long-poll requests holding a web worker thread while they wait.", () -> maxLongPolls - longPollSlots.availablePermits());
+        int maxStreams = plugin.getConfig().getInt("live-stream-max-clients", 16);
+        if (maxThreads <= maxStreams + maxLongPolls) {
+            plugin.getLogger().warning("web-max-threads (" + maxThreads + ") is not above live-stream-max-clients + web-max-long-polls (" + (maxStreams + maxLongPolls)
+                    + "); open live streams and long polls can leave no worker for other requests.");
+        }
+    }
+
+    public void flushToggles() {
+        toggleCoalescer.flush();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        toggleCoalescer.close();
+    }
+
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+        return new SocketClientHandler(inputStream, finalAccept);
+    }
+
+    private void rejectBusy(ClientHandler handler) {
+        rejectedConnections.inc();
+        if (handler instanceof SocketClientHandler) {
+            byte[] body = "{\"status\":\"error\", \"message\":\"Server busy, retry shortly.\"}".getBytes(StandardCharsets.UTF_8);
+            String head = "HTTP/1.1 503 Service Unavailable\r\nRetry-After: 1\r\nContent-Type: application/json; charset=utf-8\r\nContent-Length: " + body.length + "\r\nConnection: close\r\n\r\n";
+            try {
+                OutputStream out = ((SocketClientHandler) handler).socket.getOutputStream();
+                out.write(head.getBytes(StandardCharsets.US_ASCII));
+                out.write(body);
+                out.flush();
+            } catch (IOException ignored) {
+                // The client is gone already; closing below is all that is left to do.
+            }
+        }
+        handler.close();
+    }
+
+    private class SocketClientHandler extends ClientHandler {
+        private final Socket socket;
+
+        SocketClientHandler(InputStream inputStream, Socket socket) {
+            super(inputStream, socket);
+            this.socket = socket;
+        }
     }
 
     @Override
     public Response serve(IHTTPSession session) {
         String uri = session.getUri();
+        String action = uri.startsWith("/api/") ? metricAction(uri.substring(5)) : uri.startsWith(StaticAssets.PREFIX) ? "static" : "dashboard";
+        long start = System.nanoTime();
+        long retryMillis = uri.startsWith("/api/") && !action.startsWith("live-") ? rateLimiter.tryAcquire(session.getRemoteIpAddress(), action) : 0L;
+        Response response;
+        if (retryMillis > 0) {
+            metrics.counter("remoteredstone_http_rate_limited_total", "Requests answered with 429 by the per-client rate limit.", "action", action).inc();
+            response = newFixedLengthResponse(Response.Status.TOO_MANY_REQUESTS, "application/json; charset=utf-8", "{\"status\":\"error\", \"message\":\"Too many requests, slow down.\"}");
+            response.addHeader("Retry-After", Long.toString((retryMillis + 999L) / 1000L));
+        } else if (!plugin.locationManager.isReady() && !"static".equals(action) && !"server-stats".equals(action) && !"metrics".equals(action)) {
+            response = notLoadedResponse(uri);
+        } else if (uri.startsWith("/api/")) {
+            // Toggles still waiting in the coalescer were requested first and have to land first.
+            if (AUDITED_ACTIONS.contains(action) && !"toggle-switch".equals(action)) toggleCoalescer.flush();
+            LocationSnapshot before = plugin.locationManager.getSnapshot();
+            response = handleApiRequest(uri, session, before);
+            if (AUDITED_ACTIONS.contains(action) && response.getStatus().getRequestStatus() < 300) audit(session, action, before);
+        } else {
+            response = uri.startsWith(StaticAssets.PREFIX) ? serveStatic(uri, session) : serveDashboard(session);
+        }
+        metrics.histogram("remoteredstone_http_request_duration_seconds", "Time to produce a response, per API action. Long-poll actions include the wait.", "action", action).observeNanos(System.nanoTime() - start);
+        metrics.counter("remoteredstone_http_requests_total", "Requests per API action and status code.", "action", action, "status", Integer.toString(response.getStatus().getRequestStatus())).inc();
+        return response;
+    }
+
+    private static String metricAction(String action) {
+        return METRIC_ACTION.matcher(action).matches() ? action : "invalid";
+    }
+
+    /**
+     * Records a successful change request. The parameters were parsed by the handler; the old
+     * state of a switch comes from the snapshot taken before the request was handled.
+     */
+    private void audit(IHTTPSession session, String action, LocationSnapshot before) {
+        Map<String, String> params = session.getParms();
+        String switchId = emptyToNull(decodeParam(params.get("switchId")));
+        String groupId = emptyToNull(decodeParam(params.get("add-switch".equals(action) ? "group" : "groupId")));
+        if ("schedule-action".equals(action)) {
+            String targetId = emptyToNull(decodeParam(params.get("targetId")));
+            if ("group".equals(decodeParam(params.get("targetType")))) groupId = targetId;
+            else switchId = targetId;
+        }
+        Switch sw = switchId != null ? before.getSwitch(switchId) : null;
+        String state = params.get("state");
+        plugin.getAuditLog().record(session.getRemoteIpAddress(), action, switchId, groupId,
+                sw != null ? AuditLog.state(sw.isOn()) : AuditLog.UNKNOWN, state != null ? AuditLog.state("set".equals(state)) : AuditLog.UNKNOWN);
+    }
+
+    /**
+     * Records one entry per switch a group toggle or batch changed, next to the request-level
+     * entry from {@link #audit}. Old states come from the snapshot taken before the request; a
+     * switch that ends up in the state it already had is left out.
+     */
+    private void auditSwitches(IHTTPSession session, String action, String groupId, LocationSnapshot before, List<Switch> switches, boolean removed) {
+        Map<String, Switch> latest = new LinkedHashMap<>();
+        for (Switch sw : switches) latest.put(sw.getId(), sw);
+        for (Switch sw : latest.values()) {
+            Switch old = before.getSwitch(sw.getId());
+            int oldState = old != null ? AuditLog.state(old.isOn()) : AuditLog.UNKNOWN;
+            int newState = removed ? AuditLog.UNKNOWN : AuditLog.state(sw.isOn());
+            if (oldState == newState) continue;
+            plugin.getAuditLog().record(session.getRemoteIpAddress(), action, sw.getId(), groupId != null ? groupId : sw.getGroupId(), oldState, newState);
+        }
+    }
+
+    /**
+     * Turns away a long-poll request when {@code web-max-long-polls} requests are already waiting,
+     * so waiting clients cannot take every worker thread.
+     */
+    private Response longPollBusyResponse() {
+        rejectedLongPolls.inc();
+        Response response = jsonResponse(503, "error", "Too many requests waiting for changes, retry later.");
+        response.addHeader("Retry-After", Integer.toString(LONG_POLL_RETRY_SECONDS));
+        return response;
+    }
+
+    /**
+     * Answers requests that need switch data while it is still loading, or after loading failed.
+     */
+    private Response notLoadedResponse(String uri) {
+        String error = plugin.locationManager.getLoadError();
+        Response response;
         if (uri.startsWith("/api/")) {
-            return handleApiRequest(uri, session);
+            response = error == null ? newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, "application/json; charset=utf-8", "{\"status\":\"loading\", \"message\":\"Switch data is still loading.\"}")
+                    : jsonResponse(503, "error", "Switch data could not be loaded, see the server log.");
+        } else {
+            response = newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, "text/html; charset=utf-8", error == null ? LOADING_PAGE : LOAD_FAILED_PAGE);
+            response.addHeader("Cache-Control", "no-store");
+        }
+        if (error == null) response.addHeader("Retry-After", "1");
+        return response;
+    }
+
+    private Response serveDashboard(IHTTPSession session) {
+        LocationSnapshot snapshot = plugin.locationManager.getSnapshot();
+        String etag = dashboardRenderer.etagFor(snapshot);
+        if (etag.equals(session.getHeaders().get("if-none-match"))) {
+            Response notModified = newFixedLengthResponse(Response.Status.NOT_MODIFIED, "text/html; charset=utf-8", "");
+            notModified.addHeader("ETag", etag);
+            return notModified;
+        }
+        DashboardRenderer.Page page = dashboardRenderer.render(snapshot);
+        String acceptEncoding = session.getHeaders().get("accept-encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        byte[] body = gzip ? page.gzippedHtml : page.html;
+        Response response = newFixedLengthResponse(Response.Status.OK, "text/html; charset=utf-8", new ByteArrayInputStream(body), body.length);
+        response.addHeader("ETag", page.etag);
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Vary", "Accept-Encoding");
+        if (gzip) response.addHeader("Content-Encoding", "gzip");
+        return response;
+    }
+
+    private Response serveStatic(String uri, IHTTPSession session) {
+        StaticAssets.Asset asset = staticAssets.get(uri);
+        if (asset == null) return jsonResponse(404, "error", "Asset not found.");
+        Response response;
+        if (asset.etag.equals(session.getHeaders().get("if-none-match"))) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, asset.mimeType, "");
+        } else {
+            String acceptEncoding = session.getHeaders().get("accept-encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            byte[] body = gzip ? asset.gzippedData : asset.data;
+            response = newFixedLengthResponse(Response.Status.OK, asset.mimeType, new ByteArrayInputStream(body), body.length);
+            if (gzip) response.addHeader("Content-Encoding", "gzip");
         }
-        return newFixedLengthResponse(generateDashboard());
+        response.addHeader("ETag", asset.etag);
+        response.addHeader("Cache-Control", "public, max-age=31536000, immutable");
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
     }
 
     private String decodeParam(String value) {
@@ -48,7 +255,34 @@ public class WebServer extends NanoHTTPD {
         }
     }
 
-    private Response handleApiRequest(String uri, IHTTPSession session) {
+    private long parseLong(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private Integer parseInteger(String value) {
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        return super.useGzipWhenAccepted(r) && r.getHeader("Content-Encoding") == null && !r.getMimeType().startsWith("text/event-stream");
+    }
+
+    private Response handleApiRequest(String uri, IHTTPSession session, LocationSnapshot before) {
         String action = uri.substring(5);
         try {
             if ("get-live-states".equals(action) && session.getMethod() == Method.POST) {
@@ -58,31 +292,190 @@ public class WebServer extends NanoHTTPD {
                 if (body != null) {
                     List<String> switchIds = gson.fromJson(body, new TypeToken<List<String>>(){}.getType());
                     Map<String, Boolean> liveStates = plugin.getLiveBlockStatesIfLoaded(switchIds);
-                    return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(liveStates));
+                    Response response = newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(liveStates));
+                    response.addHeader("X-Live-States-Updated", Long.toString(plugin.getLiveStatesUpdatedMillis()));
+                    return response;
                 }
                 return jsonResponse(400, "error", "Missing POST body for live-states.");
             }
 
+            if ("batch".equals(action) && session.getMethod() == Method.POST) {
+                Map<String, String> files = new HashMap<>();
+                session.parseBody(files);
+                String body = files.get("postData");
+                List<BatchOperation> operations = body != null ? gson.fromJson(body, new TypeToken<List<BatchOperation>>(){}.getType()) : null;
+                if (operations == null || operations.isEmpty()) return jsonResponse(400, "error", "Missing batch operations.");
+                BatchResult result = plugin.applyBatch(operations);
+                if (result.isSuccess()) {
+                    auditSwitches(session, action, null, before, result.getRemovedSwitches(), true);
+                    auditSwitches(session, action, null, before, result.getPlacedSwitches(), false);
+                }
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("status", result.isSuccess() ? "success" : "error");
+                data.put("results", result.getResults());
+                return newFixedLengthResponse(result.isSuccess() ? Response.Status.OK : Response.Status.BAD_REQUEST, "application/json; charset=utf-8", gson.toJson(data));
+            }
+            if ("live-stream".equals(action)) {
+                String lastEventId = session.getHeaders().get("last-event-id");
+                long since = parseLong(lastEventId != null ? lastEventId : session.getParms().get("since"), 0L);
+                InputStream stream = plugin.getLiveStateFeed().openStream(since);
+                if (stream == null) {
+                    return jsonResponse(503, "error", "Too many live streams open.");
+                }
+                Response response = newChunkedResponse(Response.Status.OK, "text/event-stream; charset=utf-8", stream);
+                response.addHeader("Cache-Control", "no-cache");
+                return response;
+            }
+
+            if ("live-changes".equals(action)) {
+                long since = parseLong(session.getParms().get("since"), 0L);
+                long timeoutSeconds = Math.max(0L, Math.min(30L, parseLong(session.getParms().get("timeout"), 25L)));
+                LiveStateFeed feed = plugin.getLiveStateFeed();
+                if (timeoutSeconds == 0) return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", feed.toJson(feed.changesSince(since)));
+                if (!longPollSlots.tryAcquire()) return longPollBusyResponse();
+                try {
+                    return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", feed.toJson(feed.awaitChangesSince(since, timeoutSeconds * 1000L)));
+                } finally {
+                    longPollSlots.release();
+                }
+            }
+
             Map<String, String> params = new HashMap<>();
             session.parseBody(params);
             params.putAll(session.getParms());
 
             if ("save-group-order".equals(action) && session.getMethod() == Method.POST) {
                 List<String> orderedGroupIds = gson.fromJson(params.get("postData"), new TypeToken<List<String>>(){}.getType());
-                plugin.locationManager.saveGroupOrder(orderedGroupIds);
+                plugin.locationManager.saveGroupOrder(params.containsKey("parentId") ? decodeParam(params.get("parentId")) : null, orderedGroupIds);
                 return jsonResponse(200, "success", "Group order saved.");
             }
 
-            if ("update-group".equals(action)) { plugin.locationManager.updateGroup(decodeParam(params.get("groupId")), decodeParam(params.get("newName")), decodeParam(params.get("newMemo"))); return jsonResponse(200, "success", "Group updated."); }
-            if ("update-switch".equals(action)) { plugin.locationManager.updateSwitch(decodeParam(params.get("switchId")), decodeParam(params.get("newName"))); return jsonResponse(200, "success", "Switch updated."); }
-            if ("toggle-switch".equals(action)) { String switchId = decodeParam(params.get("switchId")); boolean isON = "set".equals(decodeParam(params.get("state"))); Map<String, Object> loc = plugin.locationManager.getAllLocations().get(switchId); if (loc != null) { plugin.setSwitchBlock(loc.get("world").toString(), loc.get("x").toString(), loc.get("y").toString(), loc.get("z").toString(), isON); plugin.locationManager.updateLocationState(switchId, isON ? "ON" : "OFF"); return jsonResponse(200, "success", "Toggling switch..."); } }
-            if ("remove-switch".equals(action)) { String switchId = decodeParam(params.get("switchId")); Map<String, Object> loc = plugin.locationManager.getAllLocations().get(switchId); if (loc != null) { plugin.removeSwitchBlock(loc.get("world").toString(), loc.get("x").toString(), loc.get("y").toString(), loc.get("z").toString()); plugin.locationManager.removeLocation(switchId); return jsonResponse(200, "success", "Removed switch."); } }
+            if ("server-stats".equals(action)) {
+                return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(asyncRunner.getStats()));
+            }
+
+            if ("metrics".equals(action)) {
+                return newFixedLengthResponse(Response.Status.OK, "text/plain; version=0.0.4; charset=utf-8", metrics.toPrometheusText());
+            }
+
+            if ("tree".equals(action)) {
+                LocationSnapshot snapshot = plugin.locationManager.getSnapshot();
+                int depth = (int) parseLong(params.get("depth"), -1L);
+                int offset = (int) Math.max(0L, parseLong(params.get("offset"), 0L));
+                int limit = (int) Math.max(0L, parseLong(params.get("limit"), 500L));
+                Map<String, Object> tree = LocationJson.tree(snapshot, decodeParam(params.get("root")), depth, offset, limit, LocationJson.parseFields(decodeParam(params.get("fields"))));
+                return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(tree));
+            }
+
+            if ("audit".equals(action)) {
+                int limit = (int) Math.max(1L, Math.min(1000L, parseLong(params.get("limit"), 100L)));
+                Map<String, Object> responseData = new LinkedHashMap<>();
+                responseData.put("entries", plugin.getAuditLog().query(emptyToNull(decodeParam(params.get("actor"))), emptyToNull(decodeParam(params.get("endpoint"))),
+                        emptyToNull(decodeParam(params.get("switchId"))), emptyToNull(decodeParam(params.get("groupId"))), parseLong(params.get("since"), 0L), limit));
+                return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(responseData));
+            }
+
+            if ("search".equals(action)) {
+                SearchIndex.Query query = new SearchIndex.Query();
+                query.text = decodeParam(params.get("q"));
+                query.type = emptyToNull(decodeParam(params.get("type")));
+                query.groupId = emptyToNull(decodeParam(params.get("group")));
+                query.world = emptyToNull(decodeParam(params.get("world")));
+                query.minX = parseInteger(params.containsKey("x") ? params.get("x") : params.get("minX"));
+                query.maxX = parseInteger(params.containsKey("x") ? params.get("x") : params.get("maxX"));
+                query.minY = parseInteger(params.containsKey("y") ? params.get("y") : params.get("minY"));
+                query.maxY = parseInteger(params.containsKey("y") ? params.get("y") : params.get("maxY"));
+                query.minZ = parseInteger(params.containsKey("z") ? params.get("z") : params.get("minZ"));
+                query.maxZ = parseInteger(params.containsKey("z") ? params.get("z") : params.get("maxZ"));
+                query.offset = (int) Math.max(0L, parseLong(params.get("offset"), 0L));
+                query.limit = (int) Math.max(1L, Math.min(500L, parseLong(params.get("limit"), 50L)));
+                SearchIndex.Result result;
+                try {
+                    result = plugin.locationManager.search(query);
+                } catch (IllegalArgumentException e) {
+                    return jsonResponse(400, "error", e.getMessage());
+                }
+                List<Map<String, Object>> items = new ArrayList<>(result.hits.size());
+                for (SearchIndex.Hit hit : result.hits) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("type", hit.sw != null ? "switch" : "group");
+                    item.put("score", hit.score);
+                    item.put(hit.sw != null ? "switch" : "group", hit.sw != null ? LocationJson.toMap(hit.sw, null) : LocationJson.toMap(hit.group, null));
+                    items.add(item);
+                }
+                Map<String, Object> responseData = new LinkedHashMap<>();
+                responseData.put("total", result.total);
+                responseData.put("offset", query.offset);
+                responseData.put("limit", query.limit);
+                responseData.put("results", items);
+                return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(responseData));
+            }
+
+            if ("nearby".equals(action)) {
+                String world = decodeParam(params.get("world"));
+                int x = (int) parseLong(params.get("x"), 0L);
+                int y = (int) parseLong(params.get("y"), 64L);
+                int z = (int) parseLong(params.get("z"), 0L);
+                String playerName = decodeParam(params.get("player"));
+                if (!playerName.isEmpty()) {
+                    Location loc = plugin.getPlayerLocation(playerName);
+                    if (loc == null) return jsonResponse(404, "error", "Player not found or offline.");
+                    world = loc.getWorld().getName();
+                    x = loc.getBlockX();
+                    y = loc.getBlockY();
+                    z = loc.getBlockZ();
+                }
+                if (world.isEmpty()) return jsonResponse(400, "error", "Give a player or a world with x and z.");
+                int radius = (int) Math.max(1L, Math.min(256L, parseLong(params.get("radius"), 32L)));
+                int limit = (int) Math.max(1L, Math.min(500L, parseLong(params.get("limit"), 100L)));
+                List<Map<String, Object>> items = new ArrayList<>();
+                for (Switch sw : plugin.locationManager.getSnapshot().getSwitchesInRegion(world, x - radius, z - radius, x + radius, z + radius)) {
+                    double distance = Math.sqrt(Math.pow(sw.getX() - x, 2) + Math.pow(sw.getY() - y, 2) + Math.pow(sw.getZ() - z, 2));
+                    if (distance > radius) continue;
+                    Map<String, Object> item = LocationJson.toMap(sw, null);
+                    item.put("distance", Math.round(distance * 10.0) / 10.0);
+                    items.add(item);
+                }
+                items.sort((a, b) -> Double.compare((Double) a.get("distance"), (Double) b.get("distance")));
+                Map<String, Object> responseData = new LinkedHashMap<>();
+                responseData.put("world", world);
+                responseData.put("x", x);
+                responseData.put("y", y);
+                responseData.put("z", z);
+                responseData.put("radius", radius);
+                responseData.put("total", items.size());
+                responseData.put("switches", items.size() > limit ? new ArrayList<>(items.subList(0, limit)) : items);
+                return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(responseData));
+            }
+
+            if ("schedule-action".equals(action)) {
+                ScheduledAction scheduled;
+                try {
+                    scheduled = plugin.getActionScheduler().schedule(decodeParam(params.get("targetType")), decodeParam(params.get("targetId")), decodeParam(params.get("action")),
+                            parseLong(params.get("delayTicks"), 1L), parseLong(params.get("pulseTicks"), 0L), parseLong(params.get("repeatTicks"), 0L),
+                            decodeParam(params.get("world")), parseLong(params.get("worldTime"), -1L));
+                } catch (IllegalArgumentException e) {
+                    Map<String, Object> error = new LinkedHashMap<>();
+                    error.put("status", "error");
+                    error.put("message", e.getMessage());
+                    return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json; charset=utf-8", gson.toJson(error));
+                }
+                return entityResponse("Action scheduled.", "schedule", plugin.getActionScheduler().toMap(scheduled.getId()), null);
+            }
+
+            if ("list-schedules".equals(action)) { Map<String, Object> responseData = new LinkedHashMap<>(); responseData.put("schedules", plugin.getActionScheduler().list()); return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(responseData)); }
+            if ("cancel-schedule".equals(action)) { if (plugin.getActionScheduler().cancel(decodeParam(params.get("id")))) { return jsonResponse(200, "success", "Schedule cancelled."); } return jsonResponse(404, "error", "Schedule not found."); }
+            if ("update-group".equals(action)) { Group group = plugin.locationManager.updateGroup(decodeParam(params.get("groupId")), decodeParam(params.get("newName")), decodeParam(params.get("newMemo"))); if (group != null) { return entityResponse("Group updated.", "group", LocationJson.toMap(group, null), null); } }
+            if ("update-switch".equals(action)) { Switch sw = plugin.locationManager.updateSwitch(decodeParam(params.get("switchId")), decodeParam(params.get("newName"))); if (sw != null) { return entityResponse("Switch updated.", "switch", LocationJson.toMap(sw, null), null); } }
+            if ("toggle-switch".equals(action)) { String switchId = decodeParam(params.get("switchId")); boolean isON = "set".equals(decodeParam(params.get("state"))); Switch sw = plugin.locationManager.getSnapshot().getSwitch(switchId); if (sw != null) { toggleCoalescer.submit(switchId, isON); return entityResponse("Toggling switch...", "switch", LocationJson.toMap(sw.withState(isON), null), null); } }
+            if ("remove-switch".equals(action)) { String switchId = decodeParam(params.get("switchId")); Switch sw = plugin.locationManager.getSnapshot().getSwitch(switchId); if (sw != null) { plugin.removeSwitchBlock(sw.getWorld(), sw.getX(), sw.getY(), sw.getZ()); plugin.locationManager.removeLocation(switchId); return entityResponse("Removed switch.", "switch", LocationJson.toMap(sw, null), null); } }
             if ("request-wand".equals(action)) { String playerName = decodeParam(params.get("player")); boolean success = plugin.giveSelectionWand(playerName); if (success) { return jsonResponse(200, "success", "Wand given to player " + playerName); } else { return jsonResponse(400, "error", "Player " + playerName + " not found or offline."); } }
-            if ("poll-selection".equals(action)) { String playerName = decodeParam(params.get("player")); Location loc = plugin.pollSelectedLocation(playerName); Map<String, Object> responseData = new HashMap<>(); if (loc != null) { responseData.put("status", "found"); responseData.put("world", loc.getWorld().getName()); responseData.put("x", loc.getBlockX()); responseData.put("y", loc.getBlockY()); responseData.put("z", loc.getBlockZ()); } else { responseData.put("status", "waiting"); } return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(responseData)); }
-            if ("add-group".equals(action)) { plugin.locationManager.addGroup(decodeParam(params.get("groupName")), decodeParam(params.get("memo")), decodeParam(params.get("parentId"))); return jsonResponse(200, "success", "Group '" + decodeParam(params.get("groupName")) + "' added."); }
+            if ("poll-selection".equals(action)) { String playerName = decodeParam(params.get("player")); long waitSeconds = Math.max(0L, Math.min(30L, parseLong(params.get("wait"), 0L))); Location loc; if (waitSeconds > 0) { if (!longPollSlots.tryAcquire()) return longPollBusyResponse(); try { loc = plugin.awaitSelectedLocation(playerName, waitSeconds * 1000L); } finally { longPollSlots.release(); } } else { loc = plugin.pollSelectedLocation(playerName); } Map<String, Object> responseData = new HashMap<>(); if (loc != null) { responseData.put("status", "found"); responseData.put("world", loc.getWorld().getName()); responseData.put("x", loc.getBlockX()); responseData.put("y", loc.getBlockY()); responseData.put("z", loc.getBlockZ()); } else { responseData.put("status", "waiting"); } return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(responseData)); }
+            if ("add-group".equals(action)) { Group group = plugin.locationManager.addGroup(decodeParam(params.get("groupName")), decodeParam(params.get("memo")), decodeParam(params.get("parentId"))); return entityResponse("Group '" + group.getName() + "' added.", "group", LocationJson.toMap(group, null), dashboardRenderer.renderGroupHtml(plugin.locationManager.getSnapshot(), group.getId())); }
+            if ("move-group".equals(action)) { Group group = plugin.locationManager.moveGroup(decodeParam(params.get("groupId")), decodeParam(params.get("parentId"))); if (group != null) { return entityResponse("Group moved.", "group", LocationJson.toMap(group, null), null); } }
             if ("remove-group".equals(action)) { plugin.locationManager.removeGroup(decodeParam(params.get("groupId"))); return jsonResponse(200, "success", "Group and its switches removed."); }
-            if ("toggle-group".equals(action)) { plugin.setGroupState(decodeParam(params.get("groupId")), "set".equals(decodeParam(params.get("state")))); return jsonResponse(200, "success", "Toggling group..."); }
-            if ("add-switch".equals(action)) { plugin.locationManager.addLocation(decodeParam(params.get("name")), decodeParam(params.get("world")), Integer.parseInt(params.get("x")), Integer.parseInt(params.get("y")), Integer.parseInt(params.get("z")), decodeParam(params.get("group"))); plugin.setSwitchBlock(decodeParam(params.get("world")), params.get("x"), params.get("y"), params.get("z"), false); return jsonResponse(200, "success", "Added switch '" + decodeParam(params.get("name")) + "'."); }
+            if ("toggle-group".equals(action)) { String groupId = decodeParam(params.get("groupId")); auditSwitches(session, action, groupId, before, plugin.setGroupState(groupId, "set".equals(decodeParam(params.get("state")))), false); return jsonResponse(200, "success", "Toggling group..."); }
+            if ("add-switch".equals(action)) { int x = Integer.parseInt(params.get("x")); int y = Integer.parseInt(params.get("y")); int z = Integer.parseInt(params.get("z")); Switch sw = plugin.locationManager.addLocation(decodeParam(params.get("name")), decodeParam(params.get("world")), x, y, z, decodeParam(params.get("group"))); plugin.setSwitchBlock(sw.getWorld(), x, y, z, false); return entityResponse("Added switch '" + sw.getName() + "'.", "switch", LocationJson.toMap(sw, null), dashboardRenderer.renderSwitchRow(sw)); }
 
         } catch (Exception e) {
             plugin.getLogger().warning("An error occurred while handling API request: " + e.getMessage());
@@ -92,108 +485,14 @@ public class WebServer extends NanoHTTPD {
         return jsonResponse(404, "error", "API endpoint not found.");
     }
 
-    private Response jsonResponse(int status, String result, String message) { Response.IStatus responseStatus = Response.Status.INTERNAL_ERROR; if(status == 200) responseStatus = Response.Status.OK; if(status == 400) responseStatus = Response.Status.BAD_REQUEST; if(status == 404) responseStatus = Response.Status.NOT_FOUND; return newFixedLengthResponse(responseStatus, "application/json; charset=utf-8", "{\"status\":\"" + result + "\", \"message\":\"" + message + "\"}"); }
-
-    private String generateDashboard() {
-        Map<String, Map<String, Object>> allGroups = plugin.locationManager.getAllGroups();
-        Map<String, Map<String, Object>> locations = plugin.locationManager.getAllLocations();
-        String worldOptions = worldNames.stream().map(name -> "<option value='" + name + "'>" + name + "</option>").collect(Collectors.joining());
-
-        StringBuilder html = new StringBuilder("<!DOCTYPE html><html lang='ja'><head><meta charset='UTF-8'><title>Remote Redstone Dashboard</title><meta name='viewport' content='width=device-width, initial-scale=1'>");
-        html.append("<script src='https://cdn.jsdelivr.net/npm/sortablejs@latest/Sortable.min.js'></script>");
-        html.append("<style>");
-        html.append("body{font-family:-apple-system,BlinkMacSystemFont,'Segoe UI',Roboto,Helvetica,Arial,sans-serif;background-color:#1e1e1e;color:#e0e0e0;margin:0;padding:15px;} .container{max-width:960px;margin:0 auto;} h1,h2,h3{color:#4fc3f7;border-bottom:1px solid #444;padding-bottom:10px;margin-top:1.5em;} .search-bar{width:100%;padding:10px;margin-bottom:20px;background-color:#333;border:1px solid #555;color:#fff;border-radius:5px;box-sizing:border-box;} .group{background-color:#2a2a2a;padding:20px;border-radius:10px;margin-bottom:20px;box-shadow:0 4px 8px rgba(0,0,0,0.3);} .group-header, .switch-name-cell{display:flex;align-items:center;justify-content:space-between;gap:10px;} .group-title{display:flex;align-items:center;gap:8px;} .drag-handle{cursor:grab;padding-right:8px;} .group-toggle{cursor:pointer;font-size:1.2em;user-select:none;width:20px;} .header-actions{display:flex;align-items:center;gap:10px;} .sub-group{margin-left:25px;margin-top:15px;padding-top:15px;border-top:1px dashed #555;} .group-header-memo{color:#aaa;font-size:0.9em;font-style:italic;margin-left:10px;} .edit-actions button{margin-left:10px;} table{width:100%;border-collapse:collapse;margin:20px 0;} th,td{padding:12px 15px;text-align:left;border-bottom:1px solid #444;} thead{background-color:#333;} .btn{padding:8px 15px;text-decoration:none;color:white;border-radius:5px;border:none;font-size:14px;cursor:pointer;transition:background-color 0.2s;} .btn-on{background-color:#43a047;} .btn-off{background-color:#d32f2f;} .btn-del{background-color:#616161;} .btn-edit{background-color:#2196f3;} .btn-save{background-color:#8bc34a;} .btn-cancel{background-color:#f44336;} .btn:hover{opacity:0.8;} .btn:disabled{background-color:#555;color:#999;cursor:not-allowed;} form{display:grid;gap:10px;} form button{background-color:#0288d1;padding:12px;font-size:16px;} footer{text-align:center;margin-top:30px;padding-top:15px;border-top:1px solid #444;color:#888;} .edit-form, .collapsed{display:none;} .sortable-ghost{opacity:0.4;background:#444;}");
-        html.append("</style></head><body><div class='container' id='main-container'><h1>Redstone Dashboard</h1><div id='message-box' class='msg'></div>");
-        html.append("<h2>Search Groups</h2><input type='search' id='group-search' class='search-bar' placeholder='グループ名で検索...'>");
-        html.append("<h2>Add New Top-Level Group</h2><form data-action='add-group'><input type='hidden' name='parentId' value=''><input name='groupName' placeholder='New Group Name' required><input name='memo' placeholder='Memo (optional)'><button type='submit' class='btn'>Create Group</button></form>");
-
-        Map<String, List<Map.Entry<String, Map<String, Object>>>> childGroupsMap = allGroups.entrySet().stream().filter(e -> e.getValue().containsKey("parent")).collect(Collectors.groupingBy(e -> e.getValue().get("parent").toString()));
-        List<Map.Entry<String, Map<String, Object>>> topLevelGroups = allGroups.entrySet().stream().filter(e -> !e.getValue().containsKey("parent")).sorted(Comparator.comparingLong(e -> Long.parseLong(e.getValue().getOrDefault("order", "0").toString()))).collect(Collectors.toList());
-        topLevelGroups.forEach(parentEntry -> html.append(renderGroup(parentEntry.getKey(), parentEntry.getValue(), locations, worldOptions, childGroupsMap)));
-
-        html.append("</div><footer><p>RemoteRedstone Plugin Version: ").append(pluginVersion).append("</p></footer>");
-        html.append("<script>");
-        html.append("const msgBox=document.getElementById('message-box');let pollInterval=null;");
-        html.append("function showMsg(txt,isErr){msgBox.textContent=txt;msgBox.style.backgroundColor=isErr?'#c0392b':'rgba(2,136,209,0.5)';msgBox.style.display='block';setTimeout(()=>msgBox.style.display='none',5000);}");
-        html.append("function toggleEdit(container, state) { container.querySelector('.display-view').style.display = state ? 'none' : 'flex'; container.querySelector('.edit-form').style.display = state ? 'flex' : 'none'; }");
-        html.append("function startPolling(playerName,form){if(pollInterval)clearInterval(pollInterval);let attempts=0;pollInterval=setInterval(async()=>{const res=await fetch(`/api/poll-selection?player=${encodeURIComponent(playerName)}`);const data=await res.json();if(data.status==='found'){clearInterval(pollInterval);form.querySelector('[name=world]').value=data.world;form.querySelector('[name=x]').value=data.x;form.querySelector('[name=y]').value=data.y;form.querySelector('[name=z]').value=data.z;showMsg('Coordinates received!')}attempts++;if(attempts>60){clearInterval(pollInterval);showMsg('Selection timed out.',true)}},1000)}");
-        html.append("document.body.addEventListener('click', async e => { const btn = e.target; const action = btn.dataset.action; if (!action) return; e.preventDefault();");
-        html.append("if (action === 'toggle-visibility') { const group = btn.closest('.group'); const content = group.querySelector('.group-content'); const id = group.id; let openGroups = JSON.parse(localStorage.getItem('openGroups') || '[]'); content.classList.toggle('collapsed'); btn.textContent = content.classList.contains('collapsed') ? '▶' : '▼'; if (content.classList.contains('collapsed')) { openGroups = openGroups.filter(gId => gId !== id); } else { if (!openGroups.includes(id)) openGroups.push(id); } localStorage.setItem('openGroups', JSON.stringify(openGroups)); return; }");
-        html.append("if (action === 'edit-item') { const container = btn.closest('[data-editable]'); toggleEdit(container, true); return; }");
-        html.append("if (action === 'cancel-edit') { const container = btn.closest('[data-editable]'); toggleEdit(container, false); return; }");
-        html.append("let params = new URLSearchParams(); let url, confirmMsg;");
-        html.append("if (action === 'save-group') { const container = btn.closest('[data-editable]'); params.append('groupId', container.dataset.groupId); params.append('newName', container.querySelector('[name=newName]').value); params.append('newMemo', container.querySelector('[name=newMemo]').value); url = '/api/update-group'; }");
-        html.append("else if (action === 'save-switch') { const container = btn.closest('[data-editable]'); params.append('switchId', container.dataset.switchId); params.append('newName', container.querySelector('[name=newName]').value); url = '/api/update-switch'; }");
-        html.append("else if(action==='request-wand'){ const form=btn.closest('form');const input=form.querySelector('[name=playerName]');if(!input.value){showMsg('Please enter your player name.',true);return}const res=await fetch(`/api/request-wand?player=${encodeURIComponent(input.value)}`);const data=await res.json();if(data.status==='success'){showMsg('Wand sent! Right-click a block in-game.');startPolling(input.value,form)}else{showMsg(data.message,true)}return}");
-        html.append("else if(action==='toggle-switch'){params.append('switchId', btn.dataset.switchId); params.append('state', btn.dataset.state); url=`/api/toggle-switch`;}");
-        html.append("else if(action==='remove-switch'){confirmMsg=`Delete switch '${btn.dataset.switchName}'?`; params.append('switchId', btn.dataset.switchId); url=`/api/remove-switch`;}");
-        html.append("else if(action==='toggle-group'){params.append('groupId', btn.dataset.groupId); params.append('state', btn.dataset.state); url=`/api/toggle-group`;}");
-        html.append("else if(action==='remove-group'){confirmMsg=`Delete group and ALL its sub-groups and switches?`; params.append('groupId', btn.dataset.groupId); url=`/api/remove-group`;}");
-        html.append("else return;if(confirmMsg&&!confirm(confirmMsg))return;const res=await fetch(url,{method:'POST',body:params});const data=await res.json();if(data.status==='success'){ showMsg(data.message || 'Action successful!'); if (action.startsWith('save')) { setTimeout(() => window.location.reload(), 200); } else if (action !== 'toggle-switch' && action !== 'toggle-group') { setTimeout(() => window.location.reload(), 500); } } else { showMsg(data.message,true); }});");
-        html.append("document.body.addEventListener('submit',async e=>{e.preventDefault();const form=e.target;const action=form.dataset.action;if(!action)return;const formData=new FormData(form);const params=new URLSearchParams();for(const pair of formData.entries()){params.append(pair[0],pair[1])}const res=await fetch(`/api/${action}`,{method:'POST',body:params});const data=await res.json();if(data.status==='success'){window.location.reload()}else{showMsg(data.message,true)}});");
-        html.append("document.getElementById('group-search').addEventListener('input', e => { const query = e.target.value.toLowerCase(); document.querySelectorAll('.group[data-group-name]').forEach(group => { const title = group.dataset.groupName.toLowerCase(); group.style.display = title.includes(query) ? '' : 'none'; }); });");
-        html.append("setInterval(async () => { const switchRows = document.querySelectorAll('tr[data-switch-id]'); if (switchRows.length === 0) return; const switchIds = Array.from(switchRows).map(row => row.dataset.switchId); try { const res = await fetch('/api/get-live-states', { method: 'POST', headers: {'Content-Type': 'application/json'}, body: JSON.stringify(switchIds) }); if (!res.ok) return; const liveStates = await res.json(); for (const [id, isON] of Object.entries(liveStates)) { const row = document.querySelector(`tr[data-switch-id='${id}']`); if (!row) continue; const onBtn = row.querySelector('.btn-on'); const offBtn = row.querySelector('.btn-off'); if (onBtn) onBtn.disabled = isON; if (offBtn) offBtn.disabled = !isON; } } catch (error) { /* Do nothing */ } }, 1000);");
-        html.append("document.addEventListener('DOMContentLoaded', () => { const openGroups = JSON.parse(localStorage.getItem('openGroups') || '[]'); openGroups.forEach(id => { const group = document.getElementById(id); if (group) { const content = group.querySelector('.group-content'); const toggle = group.querySelector('.group-toggle'); if (content && toggle) { content.classList.remove('collapsed'); toggle.textContent = '▼'; } } });");
-        html.append("const sortableContainers = document.querySelectorAll('#main-container, .group-content'); sortableContainers.forEach(container => { new Sortable(container, { group: 'nested', animation: 150, handle: '.drag-handle', ghostClass: 'sortable-ghost', onEnd: async (evt) => { const parent = evt.to; const groupIds = Array.from(parent.children).filter(el => el.classList.contains('group')).map(el => el.id); try { const params = new URLSearchParams(); params.append('postData', JSON.stringify(groupIds)); await fetch('/api/save-group-order', { method: 'POST', body: params }); showMsg('Order saved!'); } catch (e) { showMsg('Failed to save order.', true); } } }); }); });");
-        html.append("</script></div></body></html>");
-        return html.toString();
-    }
-
-    private String renderGroup(String groupId, Map<String, Object> groupData, Map<String, Map<String, Object>> locations, String worldOptions, Map<String, List<Map.Entry<String, Map<String, Object>>>> childGroupsMap) {
-        StringBuilder h = new StringBuilder();
-        String groupName = groupData.get("name").toString();
-        String groupMemo = groupData.getOrDefault("memo", "").toString();
-        boolean isSubGroup = groupData.containsKey("parent");
-        String groupClass = isSubGroup ? "group sub-group" : "group";
-
-        h.append("<div class='").append(groupClass).append("' id='").append(groupId).append("' data-group-name='").append(groupName).append("'>");
-        h.append("<div data-editable data-group-id='").append(groupId).append("'>");
-
-        h.append("<div class='group-header display-view'>");
-        h.append("<div class='group-title'><span class='drag-handle'>&#9776;</span><span class='group-toggle' data-action='toggle-visibility'>▶</span><h3>").append(groupName).append("</h3>");
-        if (!groupMemo.isEmpty()) h.append("<span class='group-header-memo'> - ").append(groupMemo).append("</span>");
-        h.append("</div>");
-        h.append("<div class='header-actions'>");
-        h.append("<button class='btn btn-on' data-action='toggle-group' data-group-id='").append(groupId).append("' data-state='set'>All ON</button>");
-        h.append("<button class='btn btn-off' data-action='toggle-group' data-group-id='").append(groupId).append("' data-state='clear'>All OFF</button>");
-        h.append("<button class='btn btn-del' data-action='remove-group' data-group-id='").append(groupId).append("'>Delete Group</button>");
-        h.append("<button class='btn btn-edit' data-action='edit-item'>Edit</button>");
-        h.append("</div></div>");
-
-        h.append("<div class='group-header edit-form'><div><input type='text' name='newName' value='").append(groupName).append("'><input type='text' name='newMemo' value='").append(groupMemo).append("' placeholder='Memo'></div><div class='edit-actions'><button class='btn btn-save' data-action='save-group'>Save</button><button class='btn btn-cancel' data-action='cancel-edit'>Cancel</button></div></div></div>");
-
-        h.append("<div class='group-content collapsed'>");
-        h.append("<table><thead><tr><th>Name</th><th>Location</th><th>Actions</th></tr></thead><tbody>");
-        boolean hasSwitches = false;
-        for (Map.Entry<String, Map<String, Object>> locEntry : locations.entrySet()) {
-            if (groupId.equals(locEntry.getValue().get("group"))) {
-                hasSwitches = true;
-                String switchId = locEntry.getKey();
-                Map<String, Object> loc = locEntry.getValue();
-                String switchName = loc.get("name").toString();
-                String storedState = (String) loc.getOrDefault("state", "OFF");
-                boolean isInitiallyON = "ON".equals(storedState);
-                String locStr = String.format("%s @ %s, %s, %s", loc.get("world"), loc.get("x"), loc.get("y"), loc.get("z"));
-                h.append("<tr data-switch-id='").append(switchId).append("'><td data-editable data-switch-id='").append(switchId).append("'><div class='switch-name-cell display-view'><span>").append(switchName).append("</span><button class='btn btn-edit btn-sm' data-action='edit-item'>Edit</button></div><div class='edit-form'><input type='text' name='newName' value='").append(switchName).append("'><div class='edit-actions'><button class='btn btn-save' data-action='save-switch'>Save</button><button class='btn btn-cancel' data-action='cancel-edit'>Cancel</button></div></div></td><td>").append(locStr).append("</td><td>");
-                h.append("<button class='btn btn-on' data-action='toggle-switch' data-switch-id='").append(switchId).append("' data-state='set' ").append(isInitiallyON ? "disabled" : "").append(">ON</button>");
-                h.append("<button class='btn btn-off' data-action='toggle-switch' data-switch-id='").append(switchId).append("' data-state='clear' ").append(!isInitiallyON ? "disabled" : "").append(">OFF</button>");
-                h.append("<button class='btn btn-del' data-action='remove-switch' data-switch-id='").append(switchId).append("' data-switch-name='").append(switchName).append("'>Delete</button>");
-                h.append("</td></tr>");
-            }
-        }
-        if (!hasSwitches) h.append("<tr><td colspan='3'>No switches in this group yet.</td></tr>");
-        h.append("</tbody></table>");
-
-        List<Map.Entry<String, Map<String, Object>>> childGroups = childGroupsMap.getOrDefault(groupId, new ArrayList<>()).stream()
-                .sorted(Comparator.comparingLong(e -> Long.parseLong(e.getValue().getOrDefault("order", "0").toString())))
-                .collect(Collectors.toList());
-
-        childGroups.forEach(childEntry -> h.append(renderGroup(childEntry.getKey(), childEntry.getValue(), locations, worldOptions, childGroupsMap)));
-
-        h.append("<h4>Add Sub-Group to '").append(groupName).append("'</h4><form data-action='add-group'><input type='hidden' name='parentId' value='").append(groupId).append("'><input name='groupName' placeholder='New Sub-Group Name' required><input name='memo' placeholder='Memo (optional)'><button type='submit' class='btn'>Create Sub-Group</button></form>");
-        h.append("<h4>Add Switch to '").append(groupName).append("'</h4><form data-action='add-switch'><input type='hidden' name='group' value='").append(groupId).append("'><input name='name' placeholder='Switch Name (e.g. メイン照明)' required><select name='world' required>").append(worldOptions).append("</select><input type='number' name='x' placeholder='X' required><input type='number' name='y' placeholder='Y' required><input type='number' name='z' placeholder='Z' required><div class='coord-selector'><input name='playerName' placeholder='Your IGN for Wand'><button type='button' class='btn' data-action='request-wand'>Select Block</button></div><button type='submit' class='btn'>Add Switch</button></form>");
-
-        h.append("</div></div>");
-        return h.toString();
+    private Response entityResponse(String message, String key, Object entity, String html) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("status", "success");
+        data.put("message", message);
+        data.put(key, entity);
+        if (html != null) data.put("html", html);
+        return newFixedLengthResponse(Response.Status.OK, "application/json; charset=utf-8", gson.toJson(data));
     }
-}
\ No newline at end of file
+
+    private Response jsonResponse(int status, String result, String message) { Response.IStatus responseStatus = Response.Status.INTERNAL_ERROR; if(status == 200) responseStatus = Response.Status.OK; if(status == 400) responseStatus = Response.Status.BAD_REQUEST; if(status == 404) responseStatus = Response.Status.NOT_FOUND; if(status == 503) responseStatus = Response.Status.SERVICE_UNAVAILABLE; return newFixedLengthResponse(responseStatus, "application/json; charset=utf-8", "{\"status\":\"" + result + "\", \"message\":\"" + message + "\"}"); }
+}
@@ -0,0 +1,102 @@
+package com.example.remoteredstone;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+/**
+ * The original locations.yml format. Every save rewrites the whole file through a temporary file.
+ * When the data was moved to the journal store, the first load exports it back from there.
+ */
+public class YamlLocationStore implements LocationStore {
+
+    private final File file;
+    private final JournalLocationStore exportFrom;
+
+    public YamlLocationStore(File file) {
+        this(file, null);
+    }
+
+    public YamlLocationStore(File file, JournalLocationStore exportFrom) {
+        this.file = file;
+        this.exportFrom = exportFrom;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public LocationSnapshot load() throws IOException {
+        if (exportFrom != null && !file.exists()) return exportFrom.export(this);
+        return load(YamlConfiguration.loadConfiguration(file));
+    }
+
+    @Override
+    public long save(LocationSnapshot snapshot, Set<String> changedSwitchIds, Set<String> changedGroupIds) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        byte[] bytes = toYaml(snapshot).saveToString().getBytes(StandardCharsets.UTF_8);
+        Files.write(tempFile.toPath(), bytes);
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return bytes.length;
+    }
+
+    private static LocationSnapshot load(FileConfiguration dataConfig) {
+        LocationSnapshot.Builder builder = LocationSnapshot.EMPTY.toBuilder();
+        ConfigurationSection groups = dataConfig.getConfigurationSection("groups");
+        if (groups != null) {
+            for (String id : groups.getKeys(false)) {
+                ConfigurationSection g = groups.getConfigurationSection(id);
+                if (g == null) continue;
+                builder.putGroup(new Group(id, g.getString("name", ""), g.getString("memo", ""), g.getLong("order", 0L), g.getString("parent")));
+            }
+        }
+        ConfigurationSection locations = dataConfig.getConfigurationSection("locations");
+        if (locations != null) {
+            for (String id : locations.getKeys(false)) {
+                ConfigurationSection l = locations.getConfigurationSection(id);
+                if (l == null) continue;
+                builder.putSwitch(new Switch(id, l.getString("name", ""), l.getString("world", ""),
+                        l.getInt("x"), l.getInt("y"), l.getInt("z"),
+                        "ON".equals(l.getString("state", "OFF")), l.getString("group")));
+            }
+        }
+        return builder.build();
+    }
+
+    private static YamlConfiguration toYaml(LocationSnapshot data) {
+        YamlConfiguration yaml = new YamlConfiguration();
+        for (Group group : data.getGroups().values()) {
+            String path = "groups." + group.getId();
+            yaml.set(path + ".name", group.getName());
+            yaml.set(path + ".memo", group.getMemo());
+            yaml.set(path + ".order", group.getOrder());
+            if (group.getParentId() != null) {
+                yaml.set(path + ".parent", group.getParentId());
+            }
+        }
+        for (Switch sw : data.getSwitches().values()) {
+            String path = "locations." + sw.getId();
+            yaml.set(path + ".name", sw.getName());
+            yaml.set(path + ".world", sw.getWorld());
+            yaml.set(path + ".x", sw.getX());
+            yaml.set(path + ".y", sw.getY());
+            yaml.set(path + ".z", sw.getZ());
+            yaml.set(path + ".state", sw.getState());
+            yaml.set(path + ".group", sw.getGroupId());
+        }
+        return yaml;
+    }
+}
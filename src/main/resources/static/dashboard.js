@@ -0,0 +1,30 @@
+const msgBox=document.getElementById('message-box');let pollToken=null;
+function showMsg(txt,isErr){msgBox.textContent=txt;msgBox.style.backgroundColor=isErr?'#c0392b':'rgba(2,136,209,0.5)';msgBox.style.display='block';setTimeout(()=>msgBox.style.display='none',5000);}
+function toggleEdit(container, state) { container.querySelector('.display-view').style.display = state ? 'none' : 'flex'; container.querySelector('.edit-form').style.display = state ? 'flex' : 'none'; }
+function patchDom(action, btn, data) { if (action === 'save-group' && data.group) { const el = document.getElementById(data.group.id); const c = el.querySelector('[data-editable]'); el.dataset.groupName = data.group.name; c.querySelector('h3').textContent = data.group.name; let memo = c.querySelector('.group-header-memo'); if (data.group.memo) { if (!memo) { memo = document.createElement('span'); memo.className = 'group-header-memo'; c.querySelector('.group-title').appendChild(memo); } memo.textContent = ' - ' + data.group.memo; } else if (memo) { memo.remove(); } el.querySelectorAll(':scope > .group-content > h4').forEach((h, i) => { h.textContent = (i === 0 ? 'Add Sub-Group to ' : 'Add Switch to ') + `'${data.group.name}'`; }); toggleEdit(c, false); } else if (action === 'save-switch' && data.switch) { const cell = btn.closest('[data-editable]'); cell.querySelector('.display-view span').textContent = data.switch.name; const del = cell.closest('tr').querySelector('[data-action=remove-switch]'); if (del) del.dataset.switchName = data.switch.name; toggleEdit(cell, false); } else if (action === 'remove-switch') { const row = btn.closest('tr'); const tbody = row.parentElement; row.remove(); if (!tbody.querySelector('tr')) tbody.insertAdjacentHTML('beforeend', "<tr><td colspan='3'>No switches in this group yet.</td></tr>"); } else if (action === 'remove-group') { const el = document.getElementById(btn.dataset.groupId); if (el) el.remove(); } }
+function insertFragment(action, form, data) { if (!data.html) { window.location.reload(); return; } const tpl = document.createElement('template'); tpl.innerHTML = data.html; const node = tpl.content.firstElementChild; if (action === 'add-switch') { const tbody = form.closest('.group-content').querySelector('tbody'); const empty = tbody.querySelector('td[colspan]'); if (empty) empty.parentElement.remove(); tbody.appendChild(node); return; } const parentId = form.querySelector('[name=parentId]').value; const container = parentId ? document.getElementById(parentId).querySelector('.group-content') : document.getElementById('main-container'); const anchor = parentId ? Array.from(container.children).find(el => el.tagName === 'H4') : null; container.insertBefore(node, anchor || null); initGroups(node); }
+async function startPolling(playerName,form){const token={};pollToken=token;const deadline=Date.now()+60000;while(pollToken===token&&Date.now()<deadline){try{const res=await fetch(`/api/poll-selection?player=${encodeURIComponent(playerName)}&wait=25`);if(res.status===503||res.status===429){await new Promise(r=>setTimeout(r,retryDelay(res,1000)));continue}const data=await res.json();if(data.status==='found'){pollToken=null;form.querySelector('[name=world]').value=data.world;form.querySelector('[name=x]').value=data.x;form.querySelector('[name=y]').value=data.y;form.querySelector('[name=z]').value=data.z;showMsg('Coordinates received!');return}}catch(err){await new Promise(r=>setTimeout(r,1000))}}if(pollToken===token){pollToken=null;showMsg('Selection timed out.',true)}}
+document.body.addEventListener('click', async e => { const btn = e.target; const action = btn.dataset.action; if (!action) return; e.preventDefault();
+if (action === 'toggle-visibility') { const group = btn.closest('.group'); const content = group.querySelector('.group-content'); const id = group.id; let openGroups = JSON.parse(localStorage.getItem('openGroups') || '[]'); content.classList.toggle('collapsed'); btn.textContent = content.classList.contains('collapsed') ? '▶' : '▼'; if (content.classList.contains('collapsed')) { openGroups = openGroups.filter(gId => gId !== id); } else { if (!openGroups.includes(id)) openGroups.push(id); } localStorage.setItem('openGroups', JSON.stringify(openGroups)); return; }
+if (action === 'edit-item') { const container = btn.closest('[data-editable]'); toggleEdit(container, true); return; }
+if (action === 'cancel-edit') { const container = btn.closest('[data-editable]'); toggleEdit(container, false); return; }
+let params = new URLSearchParams(); let url, confirmMsg;
+if (action === 'save-group') { const container = btn.closest('[data-editable]'); params.append('groupId', container.dataset.groupId); params.append('newName', container.querySelector('[name=newName]').value); params.append('newMemo', container.querySelector('[name=newMemo]').value); url = '/api/update-group'; }
+else if (action === 'save-switch') { const container = btn.closest('[data-editable]'); params.append('switchId', container.dataset.switchId); params.append('newName', container.querySelector('[name=newName]').value); url = '/api/update-switch'; }
+else if(action==='request-wand'){ const form=btn.closest('form');const input=form.querySelector('[name=playerName]');if(!input.value){showMsg('Please enter your player name.',true);return}const res=await fetch(`/api/request-wand?player=${encodeURIComponent(input.value)}`);const data=await res.json();if(data.status==='success'){showMsg('Wand sent! Right-click a block in-game.');startPolling(input.value,form)}else{showMsg(data.message,true)}return}
+else if(action==='toggle-switch'){params.append('switchId', btn.dataset.switchId); params.append('state', btn.dataset.state); url=`/api/toggle-switch`;}
+else if(action==='remove-switch'){confirmMsg=`Delete switch '${btn.dataset.switchName}'?`; params.append('switchId', btn.dataset.switchId); url=`/api/remove-switch`;}
+else if(action==='toggle-group'){params.append('groupId', btn.dataset.groupId); params.append('state', btn.dataset.state); url=`/api/toggle-group`;}
+else if(action==='remove-group'){confirmMsg=`Delete group and ALL its sub-groups and switches?`; params.append('groupId', btn.dataset.groupId); url=`/api/remove-group`;}
+else return;if(confirmMsg&&!confirm(confirmMsg))return;const res=await fetch(url,{method:'POST',body:params});const data=await res.json();if(data.status==='success'){ showMsg(data.message || 'Action successful!'); patchDom(action, btn, data); } else { showMsg(data.message,true); }});
+document.body.addEventListener('submit',async e=>{e.preventDefault();const form=e.target;const action=form.dataset.action;if(!action)return;const formData=new FormData(form);const params=new URLSearchParams();for(const pair of formData.entries()){params.append(pair[0],pair[1])}const res=await fetch(`/api/${action}`,{method:'POST',body:params});const data=await res.json();if(data.status==='success'){showMsg(data.message);insertFragment(action,form,data);form.reset()}else{showMsg(data.message,true)}});
+document.getElementById('group-search').addEventListener('input', e => { const query = e.target.value.toLowerCase(); document.querySelectorAll('.group[data-group-name]').forEach(group => { const title = group.dataset.groupName.toLowerCase(); group.style.display = title.includes(query) ? '' : 'none'; }); });
+let liveVersion = 0; function applyLiveStates(states) { for (const [id, isON] of Object.entries(states)) { const row = document.querySelector(`tr[data-switch-id='${id}']`); if (!row) continue; const onBtn = row.querySelector('.btn-on'); const offBtn = row.querySelector('.btn-off'); if (onBtn) onBtn.disabled = isON; if (offBtn) offBtn.disabled = !isON; } }
+function applyLiveChanges(data) { const unknown = data.reset ? Array.from(document.querySelectorAll('tr[data-switch-id]'), row => row.dataset.switchId).filter(id => !(id in data.states)) : (data.removed || []); for (const id of unknown) { const row = document.querySelector(`tr[data-switch-id='${id}']`); if (!row) continue; row.querySelectorAll('.btn-on, .btn-off').forEach(btn => { btn.disabled = false; }); } applyLiveStates(data.states); }
+function retryDelay(res, fallback) { const seconds = parseInt(res.headers.get('Retry-After'), 10); return seconds > 0 ? seconds * 1000 : fallback; }
+async function pollLiveChanges() { while (true) { let delay = 2000; try { const res = await fetch(`/api/live-changes?since=${liveVersion}`); if (res.ok) { const data = await res.json(); liveVersion = data.version; applyLiveChanges(data); continue; } delay = retryDelay(res, delay); } catch (error) { /* Retry below */ } await new Promise(r => setTimeout(r, delay)); } }
+function startLiveUpdates() { if (!window.EventSource) { pollLiveChanges(); return; } const source = new EventSource(`/api/live-stream?since=${liveVersion}`); source.addEventListener('states', e => { const data = JSON.parse(e.data); liveVersion = data.version; applyLiveChanges(data); }); source.onerror = () => { if (source.readyState === EventSource.CLOSED) pollLiveChanges(); }; }
+startLiveUpdates();
+function makeSortable(container) { new Sortable(container, { group: 'nested', animation: 150, handle: '.drag-handle', ghostClass: 'sortable-ghost', onEnd: async (evt) => { const parent = evt.to; const parentGroup = parent.closest('.group'); const parentId = parentGroup ? parentGroup.id : ''; if (evt.item.classList.contains('group')) evt.item.classList.toggle('sub-group', parentId !== ''); const groupIds = Array.from(parent.children).filter(el => el.classList.contains('group')).map(el => el.id); try { const params = new URLSearchParams(); params.append('postData', JSON.stringify(groupIds)); params.append('parentId', parentId); const res = await fetch('/api/save-group-order', { method: 'POST', body: params }); if (!res.ok) throw new Error(res.status); showMsg('Order saved!'); } catch (e) { showMsg('Failed to save order.', true); } } }); }
+function initGroups(root) { const openGroups = JSON.parse(localStorage.getItem('openGroups') || '[]'); const groups = root.classList && root.classList.contains('group') ? [root, ...root.querySelectorAll('.group')] : Array.from(root.querySelectorAll('.group')); groups.forEach(group => { const content = group.querySelector('.group-content'); const toggle = group.querySelector('.group-toggle'); if (!content) return; if (toggle && openGroups.includes(group.id)) { content.classList.remove('collapsed'); toggle.textContent = '▼'; } makeSortable(content); }); }
+document.addEventListener('DOMContentLoaded', () => { makeSortable(document.getElementById('main-container')); initGroups(document); });